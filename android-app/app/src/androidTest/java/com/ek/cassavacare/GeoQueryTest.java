@@ -0,0 +1,142 @@
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that spatial queries over 100k geotagged scans are geohash range scans and return what a
+ * scan of every row would. Query times are only logged, since wall-clock timings vary between devices.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GeoQueryTest {
+    private static final String TAG = "GeoQueryTest";
+    private static final int ROWS = 100_000;
+    // Scans spread over roughly 20 x 20 km of farmland
+    private static final double BASE_LAT = -1.2921;
+    private static final double BASE_LON = 36.8219;
+    private static final double SPREAD = 0.18;
+
+    private AppDatabase db;
+    private GeoQueries geoQueries;
+    // Every inserted scan with its row id, for brute-force expectations
+    private final List<GeoScan> inserted = new ArrayList<>();
+
+    @Before
+    public void createDatabase() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        geoQueries = new GeoQueries(db);
+
+        Random random = new Random(7);
+        List<ScanResult> batch = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            String disease = Classifier.LABELS[random.nextInt(Classifier.LABELS.length)];
+            ScanResult scan = new ScanResult(disease + " - 90% sure", 1_700_000_000_000L + i * 60_000L, null);
+            scan.disease = disease;
+            scan.confidence = 0.9f;
+            scan.setLocation(BASE_LAT + random.nextDouble() * SPREAD, BASE_LON + random.nextDouble() * SPREAD);
+            batch.add(scan);
+            if (batch.size() == 1000) {
+                insert(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void insert(List<ScanResult> batch) {
+        List<Long> ids = db.scanResultDao().insertAll(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            GeoScan scan = new GeoScan();
+            scan.id = ids.get(i).intValue();
+            scan.latitude = batch.get(i).latitude;
+            scan.longitude = batch.get(i).longitude;
+            inserted.add(scan);
+        }
+    }
+
+    @After
+    public void closeDatabase() {
+        db.close();
+    }
+
+    @Test
+    public void geohashRange_usesIndex() {
+        String prefix = Geohash.encode(BASE_LAT + SPREAD / 2, BASE_LON + SPREAD / 2, 5);
+        String plan = explain(ScanResultDao.IN_GEOHASH_RANGE, prefix, Geohash.rangeEnd(prefix));
+        assertTrue(plan, plan.contains("index_scan_results_geohash_disease"));
+    }
+
+    @Test
+    public void cellCounts_usesIndex() {
+        String prefix = Geohash.encode(BASE_LAT + SPREAD / 2, BASE_LON + SPREAD / 2, 5);
+        String plan = explain(ScanResultDao.GEOHASH_CELL_COUNTS, 7, prefix, Geohash.rangeEnd(prefix));
+        assertTrue(plan, plan.contains("index_scan_results_geohash_disease"));
+    }
+
+    @Test
+    public void withinRadius_matchesBruteForce() {
+        double lat = BASE_LAT + SPREAD / 2;
+        double lon = BASE_LON + SPREAD / 2;
+        Set<Integer> expected = new HashSet<>();
+        for (GeoScan scan : inserted) {
+            if (Geohash.distanceMeters(lat, lon, scan.latitude, scan.longitude) <= 1000) expected.add(scan.id);
+        }
+        Set<Integer> found = new HashSet<>();
+        for (GeoScan scan : geoQueries.withinRadius(lat, lon, 1000)) found.add(scan.id);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void spatialQueries_logTimings() {
+        double lat = BASE_LAT + SPREAD / 2;
+        double lon = BASE_LON + SPREAD / 2;
+        double[] box = Geohash.boxAround(lat, lon, 2000);
+        geoQueries.cellCounts(box[0], box[1], box[2], box[3], 7); // Warm up
+
+        long start = SystemClock.elapsedRealtime();
+        geoQueries.withinRadius(lat, lon, 500);
+        long radiusMs = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        Map<String, GeoCellCount> cells = geoQueries.cellCounts(box[0], box[1], box[2], box[3], 7);
+        long cellsMs = SystemClock.elapsedRealtime() - start;
+
+        assertFalse(cells.isEmpty());
+        Log.i(TAG, "Radius query took " + radiusMs + " ms, cell counts " + cellsMs + " ms");
+    }
+
+    private String explain(String sql, Object... args) {
+        // Room binds :named parameters positionally
+        String positional = sql.replaceAll(":[A-Za-z]+", "?");
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + positional, args))) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+}
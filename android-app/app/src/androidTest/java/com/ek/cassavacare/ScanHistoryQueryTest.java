@@ -0,0 +1,110 @@
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the history filter queries stay index range scans without a sort on a 50k-row
+ * history. Only the query plans are asserted, since wall-clock timings vary between devices.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScanHistoryQueryTest {
+    private static final int ROWS = 50_000;
+    private static final int LIMIT = 100;
+    private static final long START = 1_700_000_000_000L;
+    private static final long TWO_YEARS_MS = 2L * 365 * 24 * 60 * 60 * 1000;
+
+    private AppDatabase db;
+
+    @Before
+    public void createDatabase() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+
+        Random random = new Random(42);
+        byte[] thumbnail = new byte[512];
+        List<ScanResult> batch = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            String disease = Classifier.LABELS[random.nextInt(Classifier.LABELS.length)];
+            float confidence = 0.8f + random.nextFloat() * 0.2f;
+            ScanResult scan = new ScanResult(disease + " - " + Math.round(confidence * 100) + "% sure",
+                    START + (long) (random.nextDouble() * TWO_YEARS_MS), null);
+            scan.disease = disease;
+            scan.confidence = confidence;
+            scan.thumbnail = thumbnail;
+            batch.add(scan);
+            if (batch.size() == 1000) {
+                db.scanResultDao().insertAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @After
+    public void closeDatabase() {
+        db.close();
+    }
+
+    @Test
+    public void filterAllDiseases_usesTimestampIndex() {
+        String plan = explain(ScanResultDao.FILTER_ALL_DISEASES, START, START + TWO_YEARS_MS / 4, 0.9f, LIMIT);
+        assertTrue(plan, plan.contains("index_scan_results_timestamp_confidence"));
+        assertNoFullScanOrSort(plan);
+    }
+
+    @Test
+    public void filterByDisease_usesDiseaseIndex() {
+        String plan = explain(ScanResultDao.FILTER_BY_DISEASE, "Healthy", START, START + TWO_YEARS_MS / 4, 0.9f, LIMIT);
+        assertTrue(plan, plan.contains("index_scan_results_disease_timestamp_confidence"));
+        assertNoFullScanOrSort(plan);
+    }
+
+    @Test
+    public void filterByDisease_returnsOnlyMatchingRowsNewestFirst() {
+        List<ScanSummary> results = db.scanResultDao()
+                .filterByDisease("Healthy", START, START + TWO_YEARS_MS, 0.95f, LIMIT);
+        assertEquals(LIMIT, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            ScanSummary summary = results.get(i);
+            assertEquals("Healthy", summary.disease);
+            assertTrue(summary.confidence >= 0.95f);
+            if (i > 0) assertTrue(results.get(i - 1).timestamp >= summary.timestamp);
+        }
+    }
+
+    private String explain(String sql, Object... args) {
+        // Room binds :named parameters positionally
+        String positional = sql.replaceAll(":[A-Za-z]+", "?");
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + positional, args))) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    private static void assertNoFullScanOrSort(String plan) {
+        for (String line : plan.split("\n")) {
+            assertFalse(plan, line.matches("SCAN (TABLE )?scan_results\\s*"));
+        }
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+}
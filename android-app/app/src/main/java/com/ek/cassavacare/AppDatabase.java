@@ -13,10 +13,113 @@
 
 package com.ek.cassavacare;
 
+import android.content.Context;
+import androidx.annotation.NonNull;
 import androidx.room.Database;
+import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {ScanResult.class}, version = 1, exportSchema = false)
+@Database(entities = {ScanResult.class, PredictionCacheEntry.class, ScanRollup.class, LeafResult.class}, version = 7, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
+    private static final String DATABASE_NAME = "database-name";
+    private static volatile AppDatabase instance;
+
     public abstract ScanResultDao scanResultDao();
-}
\ No newline at end of file
+    public abstract PredictionCacheDao predictionCacheDao();
+
+    // Shared by every screen; never closed while the process is alive
+    public static AppDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AppDatabase.class) {
+                if (instance == null) {
+                    instance = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, DATABASE_NAME)
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6,
+                                    MIGRATION_6_7)
+                            .build();
+                }
+            }
+        }
+        return instance;
+    }
+
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `prediction_cache` (`hash` INTEGER NOT NULL, "
+                    + "`model` TEXT NOT NULL, `band0` INTEGER NOT NULL, `band1` INTEGER NOT NULL, "
+                    + "`band2` INTEGER NOT NULL, `band3` INTEGER NOT NULL, `probabilities` TEXT, "
+                    + "`last_used` INTEGER NOT NULL, PRIMARY KEY(`hash`, `model`))");
+            for (int band = 0; band < ImageHash.BANDS; band++) {
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_prediction_cache_band" + band
+                        + "` ON `prediction_cache` (`band" + band + "`)");
+            }
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_prediction_cache_last_used` "
+                    + "ON `prediction_cache` (`last_used`)");
+        }
+    };
+
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `scan_results` ADD COLUMN `disease` TEXT");
+            db.execSQL("ALTER TABLE `scan_results` ADD COLUMN `confidence` REAL NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `scan_results` ADD COLUMN `thumbnail` BLOB");
+            // Backfill from the stored "Disease - 93% sure" text
+            db.execSQL("UPDATE `scan_results` SET "
+                    + "`disease` = substr(`result`, 1, instr(`result`, ' - ') - 1), "
+                    + "`confidence` = CAST(substr(`result`, instr(`result`, ' - ') + 3, "
+                    + "instr(`result`, '%') - instr(`result`, ' - ') - 3) AS REAL) / 100.0 "
+                    + "WHERE instr(`result`, ' - ') > 0 AND instr(`result`, '%') > 0");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_scan_results_disease_timestamp_confidence` "
+                    + "ON `scan_results` (`disease`, `timestamp`, `confidence`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_scan_results_timestamp_confidence` "
+                    + "ON `scan_results` (`timestamp`, `confidence`)");
+        }
+    };
+
+    // Hashes need the image bytes, so existing rows are backfilled by the importer in pages
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `scan_results` ADD COLUMN `content_hash` INTEGER");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_scan_results_content_hash` "
+                    + "ON `scan_results` (`content_hash`)");
+        }
+    };
+
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `scan_rollups` (`period` INTEGER NOT NULL, "
+                    + "`bucket_start` INTEGER NOT NULL, `disease` TEXT NOT NULL, `count` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`period`, `bucket_start`, `disease`))");
+            db.execSQL(ScanResultDao.ROLLUP_DAYS);
+            db.execSQL(ScanResultDao.ROLLUP_WEEKS);
+        }
+    };
+
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `scan_results` ADD COLUMN `latitude` REAL");
+            db.execSQL("ALTER TABLE `scan_results` ADD COLUMN `longitude` REAL");
+            db.execSQL("ALTER TABLE `scan_results` ADD COLUMN `geohash` TEXT");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_scan_results_geohash_disease` "
+                    + "ON `scan_results` (`geohash`, `disease`)");
+        }
+    };
+
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `leaf_results` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`scan_id` INTEGER NOT NULL, `leaf_index` INTEGER NOT NULL, `box_left` REAL NOT NULL, "
+                    + "`box_top` REAL NOT NULL, `box_right` REAL NOT NULL, `box_bottom` REAL NOT NULL, "
+                    + "`disease` TEXT, `confidence` REAL NOT NULL, "
+                    + "FOREIGN KEY(`scan_id`) REFERENCES `scan_results`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_leaf_results_scan_id` ON `leaf_results` (`scan_id`)");
+        }
+    };
+}
@@ -0,0 +1,150 @@
+/*
+ * Project: CassavaCare
+ * File: AppSettings.java
+ * Description: SharedPreferences-backed settings, including the model tier chosen by the
+ *              first-launch device benchmark.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+public class AppSettings {
+    private static final String PREFS_NAME = "cassavacare_settings";
+    private static final String KEY_MODEL_TIER = "model_tier";
+    private static final String KEY_BENCHMARK_DONE = "benchmark_done";
+    private static final String KEY_BENCHMARK_SUMMARY = "benchmark_summary";
+    private static final String KEY_GATE_ENABLED = "gate_enabled";
+    private static final String KEY_GATE_THRESHOLD = "gate_threshold";
+    private static final String KEY_MIN_CONFIDENCE = "min_confidence";
+    private static final String KEY_GEOTAG_ENABLED = "geotag_enabled";
+    private static final String KEY_TILED_ANALYSIS = "tiled_analysis";
+    private static final String KEY_PERFORMANCE_OVERLAY = "performance_overlay";
+    private static final String KEY_THUMBNAIL_BACKFILL_DONE = "thumbnail_backfill_done";
+    // Per capture profile, suffixed with its key
+    private static final String KEY_CAPTURE_LATENCY = "capture_latency_";
+    private static final String KEY_CAPTURE_COUNT = "capture_count_";
+    // Weight of the newest capture in the running latency average
+    private static final float CAPTURE_LATENCY_WEIGHT = 0.2f;
+
+    public static final float DEFAULT_GATE_THRESHOLD = 0.9f;
+    public static final float DEFAULT_MIN_CONFIDENCE = 0.8f;
+
+    private final SharedPreferences prefs;
+
+    public AppSettings(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public ModelTier getModelTier() {
+        return ModelTier.fromName(prefs.getString(KEY_MODEL_TIER, null), ModelTier.ACCURATE);
+    }
+
+    public void setModelTier(ModelTier tier) {
+        prefs.edit().putString(KEY_MODEL_TIER, tier.name()).apply();
+    }
+
+    public boolean isBenchmarkDone() {
+        return prefs.getBoolean(KEY_BENCHMARK_DONE, false);
+    }
+
+    public String getBenchmarkSummary() {
+        return prefs.getString(KEY_BENCHMARK_SUMMARY, "");
+    }
+
+    public void setBenchmarkResult(ModelTier tier, String summary) {
+        prefs.edit()
+                .putString(KEY_MODEL_TIER, tier.name())
+                .putString(KEY_BENCHMARK_SUMMARY, summary)
+                .putBoolean(KEY_BENCHMARK_DONE, true)
+                .apply();
+    }
+
+    public boolean isGateEnabled() {
+        return prefs.getBoolean(KEY_GATE_ENABLED, true);
+    }
+
+    public void setGateEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_GATE_ENABLED, enabled).apply();
+    }
+
+    /** Gate "healthy" probability at or above which the full model is skipped. */
+    public float getGateThreshold() {
+        return prefs.getFloat(KEY_GATE_THRESHOLD, DEFAULT_GATE_THRESHOLD);
+    }
+
+    public void setGateThreshold(float threshold) {
+        prefs.edit().putFloat(KEY_GATE_THRESHOLD, threshold).apply();
+    }
+
+    /** Top-class probability below which a result is reported as uncertain. */
+    public float getMinConfidence() {
+        return prefs.getFloat(KEY_MIN_CONFIDENCE, DEFAULT_MIN_CONFIDENCE);
+    }
+
+    public void setMinConfidence(float confidence) {
+        prefs.edit().putFloat(KEY_MIN_CONFIDENCE, confidence).apply();
+    }
+
+    /** Whether scans are tagged with the device location; off until the user opts in. */
+    public boolean isGeotagEnabled() {
+        return prefs.getBoolean(KEY_GEOTAG_ENABLED, false);
+    }
+
+    public void setGeotagEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_GEOTAG_ENABLED, enabled).apply();
+    }
+
+    /** Whether single scans are analysed tile by tile at higher resolution; slower, so off by default. */
+    public boolean isTiledAnalysisEnabled() {
+        return prefs.getBoolean(KEY_TILED_ANALYSIS, false);
+    }
+
+    public void setTiledAnalysisEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_TILED_ANALYSIS, enabled).apply();
+    }
+
+    /** Whether the scan screen shows the inference policy and pool metrics, for field debugging. */
+    public boolean isPerformanceOverlayEnabled() {
+        return prefs.getBoolean(KEY_PERFORMANCE_OVERLAY, false);
+    }
+
+    public void setPerformanceOverlayEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_PERFORMANCE_OVERLAY, enabled).apply();
+    }
+
+    public boolean isThumbnailBackfillDone() {
+        return prefs.getBoolean(KEY_THUMBNAIL_BACKFILL_DONE, false);
+    }
+
+    public void setThumbnailBackfillDone() {
+        prefs.edit().putBoolean(KEY_THUMBNAIL_BACKFILL_DONE, true).apply();
+    }
+
+    /** Running average capture latency of a capture profile on this device, in ms. */
+    public float getCaptureLatencyMs(String profile) {
+        return prefs.getFloat(KEY_CAPTURE_LATENCY + profile, 0f);
+    }
+
+    public int getCaptureCount(String profile) {
+        return prefs.getInt(KEY_CAPTURE_COUNT + profile, 0);
+    }
+
+    public void recordCaptureLatency(String profile, long latencyMs) {
+        int count = getCaptureCount(profile);
+        float average = count == 0 ? latencyMs
+                : getCaptureLatencyMs(profile) + CAPTURE_LATENCY_WEIGHT * (latencyMs - getCaptureLatencyMs(profile));
+        prefs.edit()
+                .putFloat(KEY_CAPTURE_LATENCY + profile, average)
+                .putInt(KEY_CAPTURE_COUNT + profile, count + 1)
+                .apply();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Project: CassavaCare
+ * File: ArchiveViewModel.java
+ * Description: Activity-scoped owner of the history export and restore jobs, so a running job
+ *              survives rotation and navigating away from the history screen.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.app.Application;
+import android.net.Uri;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ArchiveViewModel extends AndroidViewModel {
+
+    /** Progress of the running export or restore, or its outcome once finished. */
+    public static class ArchiveProgress {
+        public final String text;
+        public final int done;
+        public final int total;
+        public final boolean finished;
+        private final AtomicBoolean noticeTaken = new AtomicBoolean();
+
+        ArchiveProgress(String text, int done, int total, boolean finished) {
+            this.text = text;
+            this.done = done;
+            this.total = total;
+            this.finished = finished;
+        }
+
+        /** True only the first time after the job finished, so a recreated view does not repeat the toast. */
+        public boolean takeNotice() {
+            return finished && noticeTaken.compareAndSet(false, true);
+        }
+    }
+
+    private final MutableLiveData<ArchiveProgress> progress = new MutableLiveData<>(null);
+    // Main thread only; at most one of them runs at a time
+    private HistoryExporter exporter;
+    private HistoryImporter importer;
+
+    public ArchiveViewModel(@NonNull Application application) {
+        super(application);
+    }
+
+    public LiveData<ArchiveProgress> getProgress() {
+        return progress;
+    }
+
+    public boolean isRunning() {
+        return exporter != null || importer != null;
+    }
+
+    /** Writes the history to uri; call on the main thread. Does nothing while a job is running. */
+    public void startExport(Uri uri) {
+        if (isRunning()) return;
+        progress.setValue(new ArchiveProgress("Preparing export...", 0, 0, false));
+        exporter = HistoryExporter.start(getApplication(), uri, exportListener);
+    }
+
+    /** Adds the scans of the backup at uri; call on the main thread. Does nothing while a job is running. */
+    public void startRestore(Uri uri) {
+        if (isRunning()) return;
+        progress.setValue(new ArchiveProgress("Reading backup...", 0, 0, false));
+        importer = HistoryImporter.start(getApplication(), uri, restoreListener);
+    }
+
+    /** Stops the running job; it still reports how far it got. */
+    public void cancel() {
+        if (exporter != null) exporter.cancel();
+        if (importer != null) importer.cancel();
+    }
+
+    private final HistoryExporter.Listener exportListener = new HistoryExporter.Listener() {
+        @Override
+        public void onProgress(int done, int total) {
+            progress.setValue(new ArchiveProgress("Exported " + done + " of " + total + " entries", done, total, false));
+        }
+
+        @Override
+        public void onFinished(boolean cancelled, int exported) {
+            exporter = null;
+            finish(cancelled ? "Export cancelled" : "Exported " + exported + " scans");
+        }
+
+        @Override
+        public void onFailed(String message) {
+            exporter = null;
+            finish("Export failed: " + message);
+        }
+    };
+
+    private final HistoryImporter.Listener restoreListener = new HistoryImporter.Listener() {
+        @Override
+        public void onProgress(int done, int total) {
+            progress.setValue(new ArchiveProgress("Restored " + done + " of " + total + " scans", done, total, false));
+        }
+
+        @Override
+        public void onFinished(boolean cancelled, int imported, int duplicates) {
+            importer = null;
+            finish((cancelled ? "Restore stopped: " : "Restore finished: ")
+                    + imported + " added, " + duplicates + " already in history");
+        }
+
+        @Override
+        public void onFailed(String message) {
+            importer = null;
+            finish("Restore failed: " + message);
+        }
+    };
+
+    private void finish(String message) {
+        ArchiveProgress last = progress.getValue();
+        progress.setValue(new ArchiveProgress(message, last != null ? last.done : 0, last != null ? last.total : 0, true));
+    }
+
+    @Override
+    protected void onCleared() {
+        cancel();
+    }
+}
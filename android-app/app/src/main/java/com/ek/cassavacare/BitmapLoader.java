@@ -0,0 +1,155 @@
+/*
+ * Project: CassavaCare
+ * File: BitmapLoader.java
+ * Description: Size-targeted, orientation-correct bitmap decoding for gallery images and camera
+ *              captures. Must be called off the main thread.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.ImageDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class BitmapLoader {
+    private static final String TAG = "BitmapLoader";
+    // Shorter side used when no classifier is loaded yet (the 380 px model's resize target)
+    public static final int DEFAULT_TARGET_SIZE = 400;
+
+    /**
+     * Decodes an image so its shorter side is just above targetSize, never the full
+     * resolution, with EXIF orientation applied.
+     */
+    public static Bitmap decode(Context context, Uri uri, int targetSize) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            // ImageDecoder scales while decoding and applies EXIF orientation itself
+            ImageDecoder.Source source = ImageDecoder.createSource(resolver, uri);
+            return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+                int width = info.getSize().getWidth();
+                int height = info.getSize().getHeight();
+                float scale = targetSize / (float) Math.min(width, height);
+                if (scale < 1f) {
+                    decoder.setTargetSize(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+                }
+                // Software bitmaps, since preprocessing reads pixels back
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+            });
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, targetSize);
+        Bitmap bitmap;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (bitmap == null) return null;
+
+        int rotation = 0;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in != null) rotation = exifRotation(new ExifInterface(in));
+        } catch (IOException e) {
+            Log.w(TAG, "No EXIF orientation for " + uri + ": " + e.getMessage());
+        }
+        return scaleAndRotate(bitmap, targetSize, rotation);
+    }
+
+    /** Decodes camera JPEG bytes to just above targetSize, rotated upright by rotationDegrees. */
+    public static Bitmap decode(byte[] data, int rotationDegrees, int targetSize) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, targetSize);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (bitmap == null) return null;
+        return scaleAndRotate(bitmap, targetSize, rotationDegrees);
+    }
+
+    /**
+     * Decodes only the crop region of camera JPEG bytes, to just above targetSize and rotated
+     * upright; pixels outside the region are never decoded. A null crop decodes the whole frame.
+     */
+    public static Bitmap decode(byte[] data, Rect crop, int rotationDegrees, int targetSize) {
+        if (crop == null) return decode(data, rotationDegrees, targetSize);
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                    ? BitmapRegionDecoder.newInstance(data, 0, data.length)
+                    : BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+        } catch (IOException e) {
+            Log.w(TAG, "Region decode unavailable, decoding the whole frame: " + e.getMessage());
+            return decode(data, rotationDegrees, targetSize);
+        }
+        try {
+            Rect region = new Rect(crop);
+            if (!region.intersect(0, 0, decoder.getWidth(), decoder.getHeight())) return null;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize(region.width(), region.height(), targetSize);
+            Bitmap bitmap = decoder.decodeRegion(region, options);
+            if (bitmap == null) return null;
+            return scaleAndRotate(bitmap, targetSize, rotationDegrees);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    // Largest power of two that keeps the shorter side at or above targetSize
+    private static int sampleSize(int width, int height, int targetSize) {
+        int shorterSide = Math.min(width, height);
+        int sampleSize = 1;
+        while (shorterSide / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // Finishes the power-of-two decode with one exact scale and the rotation in a single pass
+    private static Bitmap scaleAndRotate(Bitmap bitmap, int targetSize, int rotationDegrees) {
+        float scale = targetSize / (float) Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (scale >= 1f && rotationDegrees == 0) return bitmap;
+
+        Matrix matrix = new Matrix();
+        if (scale < 1f) matrix.postScale(scale, scale);
+        if (rotationDegrees != 0) matrix.postRotate(rotationDegrees);
+        Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (transformed != bitmap) bitmap.recycle();
+        return transformed;
+    }
+
+    private static int exifRotation(ExifInterface exif) {
+        switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+            case ExifInterface.ORIENTATION_ROTATE_90: return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180: return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270: return 270;
+            default: return 0;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Project: CassavaCare
+ * File: BulkImportPipeline.java
+ * Description: Streams many gallery images through decode -> preprocess -> infer -> persist stages
+ *              on the shared task pools, a bounded number of images at a time, with progress
+ *              reporting and cancel/resume support.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BulkImportPipeline {
+    private static final String TAG = "BulkImportPipeline";
+    // Images between decode and persist at once, which bounds how many bitmaps exist at any time
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final String QUEUE_FILE = "bulk_import_queue.txt";
+    private static final String PREFS_NAME = "bulk_import";
+    private static final String KEY_DONE = "done";
+    private static final String KEY_FAILED = "failed";
+
+    public interface Listener {
+        void onProgress(int done, int total, int saved, int rejected, int duplicates, int failed);
+        void onFinished(boolean cancelled, int saved, int rejected, int duplicates, int failed);
+    }
+
+    private static class Item {
+        // Place in this run's order, and index in the URI list
+        final int position;
+        final int index;
+        final Uri uri;
+        Bitmap bitmap;
+        long hash;
+        boolean duplicate;
+        Classification classification;
+        // Could not be analysed, e.g. the classifier was closed; retried when the import is resumed
+        boolean failed;
+
+        Item(int position, int index, Uri uri) {
+            this.position = position;
+            this.index = index;
+            this.uri = uri;
+        }
+    }
+
+    private interface StageWork {
+        void process(Item item);
+    }
+
+    private final Context context;
+    private final Classifier classifier;
+    private final PredictionCache predictionCache;
+    private final ScanWriter scanWriter;
+    private final List<Uri> uris;
+    // URI indexes this run goes through: images that failed before, then the ones never reached
+    private final List<Integer> order;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    // Guarded by this. nextToDecode and nextToPersist are positions in order
+    private int nextToDecode;
+    private int nextToPersist;
+    private int inFlight;
+    // Items done out of order, waiting for the ones before them to be persisted
+    private final Map<Integer, Item> finished = new HashMap<>();
+    // Resume point: every image before cursor was persisted, except the failed ones
+    private int cursor;
+    private final Set<Integer> failedIndexes;
+    private int done;
+    private int saved;
+    private int rejected;
+    private int duplicates;
+    private int failed;
+    private boolean ended;
+
+    private BulkImportPipeline(Context context, Classifier classifier, List<Uri> uris, int cursor,
+                               Set<Integer> failedIndexes, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.classifier = classifier;
+        this.predictionCache = new PredictionCache(AppDatabase.getInstance(context));
+        this.scanWriter = ScanWriter.getInstance(context);
+        this.uris = uris;
+        this.cursor = cursor;
+        this.failedIndexes = failedIndexes;
+        this.listener = listener;
+        order = new ArrayList<>(new TreeSet<>(failedIndexes));
+        for (int i = cursor; i < uris.size(); i++) order.add(i);
+        done = cursor - failedIndexes.size();
+    }
+
+    /** Starts a new import, replacing any unfinished one. */
+    public static BulkImportPipeline start(Context context, Classifier classifier, List<Uri> uris, Listener listener) {
+        savePendingJob(context, uris);
+        BulkImportPipeline pipeline = new BulkImportPipeline(context, classifier, uris, 0, new HashSet<>(), listener);
+        pipeline.run();
+        return pipeline;
+    }
+
+    /**
+     * Continues the unfinished import: retries the images that failed, then goes on from the first
+     * image not yet reached. Images already persisted are never analysed or stored again.
+     */
+    public static BulkImportPipeline resume(Context context, Classifier classifier, Listener listener) {
+        List<Uri> uris = pendingUris(context);
+        BulkImportPipeline pipeline = new BulkImportPipeline(context, classifier, uris,
+                prefs(context).getInt(KEY_DONE, 0), pendingFailed(context), listener);
+        pipeline.run();
+        return pipeline;
+    }
+
+    /** Stops after the images in flight; they are not counted, so a resume picks them up again. */
+    public void cancel() {
+        cancelled.set(true);
+        synchronized (this) {
+            finishIfDone();
+        }
+    }
+
+    private synchronized void run() {
+        Log.d(TAG, "Importing " + order.size() + " of " + uris.size() + " images");
+        fill();
+        finishIfDone();
+    }
+
+    // Feeds the decode stage up to the in-flight limit; called under the lock
+    private void fill() {
+        while (inFlight < MAX_IN_FLIGHT && nextToDecode < order.size() && !cancelled.get()) {
+            int index = order.get(nextToDecode);
+            Item item = new Item(nextToDecode, index, uris.get(index));
+            nextToDecode++;
+            inFlight++;
+            runStage(TaskDispatcher.Pool.DECODE, item, this::decode);
+        }
+    }
+
+    // The per-image work runs on the shared pools at background priority, so a photo the user is
+    // waiting on jumps ahead of the import. A stage that throws or is dropped by a full pool fails
+    // the item instead of stalling the import
+    private void runStage(TaskDispatcher.Pool pool, Item item, StageWork work) {
+        TaskDispatcher.Task<Void> task = TaskDispatcher.getInstance().submit(pool, TaskDispatcher.Priority.BACKGROUND, () -> {
+            try {
+                if (cancelled.get()) {
+                    complete(item);
+                } else {
+                    work.process(item);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to analyze " + item.uri + ": " + e.getMessage());
+                item.failed = true;
+                complete(item);
+            }
+        });
+        task.whenDone(() -> {
+            if (!task.isCancelled()) return;
+            Log.w(TAG, "The " + pool + " pool dropped " + item.uri);
+            item.failed = true;
+            // The task that displaced this one may have been submitted from the main thread
+            TaskDispatcher.Task<Void> handoff = TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DISK_IO,
+                    TaskDispatcher.Priority.USER, () -> complete(item));
+            if (handoff.isCancelled()) mainHandler.post(() -> complete(item));
+        });
+    }
+
+    // Decode pool: decodes at target size, then runs the quality check and the lookup for photos
+    // already in the history
+    private void decode(Item item) {
+        try {
+            item.bitmap = BitmapLoader.decode(context, item.uri, classifier.getResizeTarget());
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Failed to decode " + item.uri + ": " + e.getMessage());
+        }
+        if (item.bitmap == null) {
+            // Not an image this device can read, so retrying would not help
+            item.classification = Classification.rejected("Could not read image", null);
+            complete(item);
+            return;
+        }
+        ImageQualityCheck.Report quality = ImageQualityCheck.check(item.bitmap);
+        if (!quality.isAcceptable()) {
+            item.classification = Classification.rejected(quality.rejection.message, null);
+            complete(item);
+            return;
+        }
+        item.hash = ImageHash.dHash(item.bitmap);
+        float[] cached = predictionCache.lookup(item.hash, classifier.getCacheKey());
+        if (cached != null) {
+            item.duplicate = true;
+            item.classification = classifier.interpret(cached);
+            complete(item);
+            return;
+        }
+        runStage(TaskDispatcher.Pool.INFERENCE, item, this::infer);
+    }
+
+    // Inference pool
+    private void infer(Item item) {
+        item.classification = classifier.interpret(classifier.getProbabilities(item.bitmap));
+        complete(item);
+    }
+
+    // Persists every item that is next in order, so the saved progress is always a clean prefix,
+    // then lets more images in
+    private synchronized void complete(Item item) {
+        finished.put(item.position, item);
+        Item next;
+        while ((next = finished.remove(nextToPersist)) != null) {
+            persist(next);
+            nextToPersist++;
+            inFlight--;
+        }
+        fill();
+        finishIfDone();
+    }
+
+    // Called under the lock
+    private void persist(Item item) {
+        if (!cancelled.get()) {
+            if (item.failed) {
+                failed++;
+                failedIndexes.add(item.index);
+            } else {
+                failedIndexes.remove(item.index);
+                if (item.classification == null || item.classification.isRejected()) {
+                    rejected++;
+                } else if (item.duplicate) {
+                    duplicates++;
+                } else {
+                    scanWriter.enqueue(ScanResult.from(item.classification, item.bitmap, System.currentTimeMillis()));
+                    saved++;
+                    // Only stored scans are cached, as for single scans; best effort, off the persisting thread
+                    long hash = item.hash;
+                    float[] probabilities = item.classification.probabilities;
+                    TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DISK_IO, TaskDispatcher.Priority.BACKGROUND,
+                            () -> predictionCache.store(hash, classifier.getCacheKey(), probabilities));
+                }
+            }
+            // The resume point moves past every image, failed ones are kept aside to be retried
+            cursor = Math.max(cursor, item.index + 1);
+            savePendingProgress(context, cursor, failedIndexes);
+
+            done++;
+            int doneSoFar = done;
+            int total = uris.size();
+            int savedSoFar = saved;
+            int rejectedSoFar = rejected;
+            int duplicatesSoFar = duplicates;
+            int failedSoFar = failed;
+            mainHandler.post(() -> listener.onProgress(doneSoFar, total, savedSoFar, rejectedSoFar,
+                    duplicatesSoFar, failedSoFar));
+        }
+        recycle(item);
+    }
+
+    // Called under the lock
+    private void finishIfDone() {
+        if (ended || inFlight > 0 || (nextToDecode < order.size() && !cancelled.get())) return;
+        ended = true;
+        scanWriter.flushAsync();
+        boolean wasCancelled = cancelled.get();
+        // A cancelled or partly failed job stays on disk so it can be resumed later
+        if (!wasCancelled && failed == 0) clearPendingJob(context);
+        int savedTotal = saved;
+        int rejectedTotal = rejected;
+        int duplicateTotal = duplicates;
+        int failedTotal = failed;
+        mainHandler.post(() -> listener.onFinished(wasCancelled, savedTotal, rejectedTotal, duplicateTotal, failedTotal));
+    }
+
+    private static void recycle(Item item) {
+        if (item.bitmap != null) {
+            item.bitmap.recycle();
+            item.bitmap = null;
+        }
+    }
+
+    // Pending job: the URI list in a file; the resume point and the failed images in preferences
+
+    public static boolean hasPendingJob(Context context) {
+        return new File(context.getFilesDir(), QUEUE_FILE).exists();
+    }
+
+    /** Images of the pending job that are done for good, i.e. reached and not failed. */
+    public static int pendingDone(Context context) {
+        return prefs(context).getInt(KEY_DONE, 0) - pendingFailed(context).size();
+    }
+
+    private static Set<Integer> pendingFailed(Context context) {
+        Set<Integer> indexes = new HashSet<>();
+        for (String index : prefs(context).getStringSet(KEY_FAILED, Collections.emptySet())) {
+            indexes.add(Integer.parseInt(index));
+        }
+        return indexes;
+    }
+
+    public static List<Uri> pendingUris(Context context) {
+        List<Uri> uris = new ArrayList<>();
+        File file = new File(context.getFilesDir(), QUEUE_FILE);
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            for (String line : new String(bytes, 0, read, StandardCharsets.UTF_8).split("\n")) {
+                if (!line.isEmpty()) uris.add(Uri.parse(line));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read pending import: " + e.getMessage());
+        }
+        return uris;
+    }
+
+    private static void savePendingJob(Context context, List<Uri> uris) {
+        StringBuilder sb = new StringBuilder();
+        for (Uri uri : uris) sb.append(uri.toString()).append('\n');
+        try (FileOutputStream out = new FileOutputStream(new File(context.getFilesDir(), QUEUE_FILE))) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save pending import: " + e.getMessage());
+        }
+        savePendingProgress(context, 0, Collections.emptySet());
+    }
+
+    // One edit, so the resume point and the failed images never disagree
+    private static void savePendingProgress(Context context, int cursor, Set<Integer> failedIndexes) {
+        Set<String> failed = new HashSet<>();
+        for (int index : failedIndexes) failed.add(Integer.toString(index));
+        prefs(context).edit().putInt(KEY_DONE, cursor).putStringSet(KEY_FAILED, failed).apply();
+    }
+
+    public static void clearPendingJob(Context context) {
+        new File(context.getFilesDir(), QUEUE_FILE).delete();
+        prefs(context).edit().remove(KEY_DONE).remove(KEY_FAILED).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
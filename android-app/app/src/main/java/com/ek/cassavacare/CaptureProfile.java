@@ -0,0 +1,135 @@
+/*
+ * Project: CassavaCare
+ * File: CaptureProfile.java
+ * Description: Camera capture settings matched to what preprocessing consumes: a resolution just
+ *              above the decode target instead of the full sensor, latency-first capture, and the
+ *              crop of the on-screen guide frame. Capture latency is recorded per profile so slow
+ *              devices step down to a smaller one.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.util.Log;
+import android.util.Size;
+import android.view.View;
+import androidx.camera.core.ImageCapture;
+import androidx.camera.core.resolutionselector.AspectRatioStrategy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import java.util.Locale;
+
+public class CaptureProfile {
+    private static final String TAG = "CaptureProfile";
+    // Shorter side captured and decoded, as a multiple of the model's resize target: room for the
+    // leaf crop and the guide frame crop, which both keep only part of the frame
+    public static final int HEADROOM = 2;
+    // A profile whose captures average slower than this steps down one size
+    private static final long SLOW_CAPTURE_MS = 1500;
+    private static final int MIN_SAMPLES = 5;
+
+    // Shorter side of the requested capture size, in pixels
+    public final int shorterSide;
+
+    private CaptureProfile(int shorterSide) {
+        this.shorterSide = shorterSide;
+    }
+
+    /**
+     * The profile for the current model tier and settings: enough pixels for tiled analysis when
+     * it is on, otherwise for the leaf crop, one step smaller on devices measured to be slow.
+     */
+    public static CaptureProfile forDevice(Context context) {
+        AppSettings settings = new AppSettings(context);
+        ModelTier tier = InferenceScheduler.getInstance(context).getPolicy().cap(settings.getModelTier());
+        int resizeTarget = Math.round(tier.inputSize * Classifier.RESIZE_RATIO);
+        int scale = settings.isTiledAnalysisEnabled() ? TiledAnalyzer.DECODE_SCALE : HEADROOM;
+        CaptureProfile profile = new CaptureProfile(resizeTarget * scale);
+        if (scale > 1 && settings.getCaptureCount(profile.key()) >= MIN_SAMPLES
+                && settings.getCaptureLatencyMs(profile.key()) > SLOW_CAPTURE_MS) {
+            Log.d(TAG, "Captures at " + profile.key() + " are slow on this device, stepping down");
+            profile = new CaptureProfile(resizeTarget * (scale - 1));
+        }
+        return profile;
+    }
+
+    /** Latency-first capture at the closest size at or above this profile, in 4:3 where available. */
+    public ImageCapture buildImageCapture() {
+        // Sizes are in sensor orientation, i.e. landscape
+        Size bound = new Size(shorterSide * 4 / 3, shorterSide);
+        ResolutionSelector selector = new ResolutionSelector.Builder()
+                .setResolutionStrategy(new ResolutionStrategy(bound,
+                        ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER))
+                .setAspectRatioStrategy(AspectRatioStrategy.RATIO_4_3_FALLBACK_AUTO_STRATEGY)
+                .build();
+        return new ImageCapture.Builder()
+                .setCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY)
+                .setResolutionSelector(selector)
+                .build();
+    }
+
+    /** Identifies the profile in stored latency statistics; includes the model, since backups move between phones. */
+    public String key() {
+        return shorterSide + "@" + Build.MODEL;
+    }
+
+    public void recordLatency(Context context, long latencyMs) {
+        new AppSettings(context).recordCaptureLatency(key(), latencyMs);
+    }
+
+    public String describe(Context context) {
+        AppSettings settings = new AppSettings(context);
+        int count = settings.getCaptureCount(key());
+        return String.format(Locale.US, "Capture: %d px, %s", shorterSide, count > 0
+                ? String.format(Locale.US, "%.0f ms avg over %d", settings.getCaptureLatencyMs(key()), count)
+                : "no captures yet");
+    }
+
+    /** Bounds of guide within preview, as fractions of the preview size. */
+    public static RectF guideFraction(View guide, View preview) {
+        float width = preview.getWidth();
+        float height = preview.getHeight();
+        if (width <= 0 || height <= 0) return null;
+        return new RectF((guide.getLeft() - preview.getLeft()) / width, (guide.getTop() - preview.getTop()) / height,
+                (guide.getRight() - preview.getLeft()) / width, (guide.getBottom() - preview.getTop()) / height);
+    }
+
+    /**
+     * The part of a captured frame inside the guide. crop is the frame's view port crop, i.e. what
+     * the preview showed, in sensor orientation; guide is upright, as on screen, so it is rotated
+     * back by the frame's rotation first.
+     */
+    public static Rect guideCrop(Rect crop, RectF guide, int rotationDegrees) {
+        if (guide == null) return crop;
+        float left, top, right, bottom;
+        switch (rotationDegrees) {
+            case 90:
+                left = guide.top; top = 1 - guide.right; right = guide.bottom; bottom = 1 - guide.left;
+                break;
+            case 180:
+                left = 1 - guide.right; top = 1 - guide.bottom; right = 1 - guide.left; bottom = 1 - guide.top;
+                break;
+            case 270:
+                left = 1 - guide.bottom; top = guide.left; right = 1 - guide.top; bottom = guide.right;
+                break;
+            default:
+                left = guide.left; top = guide.top; right = guide.right; bottom = guide.bottom;
+        }
+        Rect result = new Rect(
+                crop.left + Math.round(crop.width() * Math.max(0f, left)),
+                crop.top + Math.round(crop.height() * Math.max(0f, top)),
+                crop.left + Math.round(crop.width() * Math.min(1f, right)),
+                crop.top + Math.round(crop.height() * Math.min(1f, bottom)));
+        return result.isEmpty() ? crop : result;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Project: CassavaCare
+ * File: Classification.java
+ * Description: Outcome of analysing one image: either a confident label with its probabilities,
+ *              or a rejection with the message to show the user.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+public class Classification {
+    public final String label;
+    public final float confidence;
+    public final float[] probabilities;
+    public final String rejectionMessage;
+
+    private Classification(String label, float confidence, float[] probabilities, String rejectionMessage) {
+        this.label = label;
+        this.confidence = confidence;
+        this.probabilities = probabilities;
+        this.rejectionMessage = rejectionMessage;
+    }
+
+    public static Classification confident(String label, float confidence, float[] probabilities) {
+        return new Classification(label, confidence, probabilities, null);
+    }
+
+    public static Classification rejected(String message, float[] probabilities) {
+        return new Classification(null, 0f, probabilities, message);
+    }
+
+    public boolean isRejected() {
+        return rejectionMessage != null;
+    }
+
+    /** Text shown to the user and stored in history, e.g. "Healthy - 93% sure". */
+    public String getDisplayText() {
+        if (isRejected()) return rejectionMessage;
+        return String.format("%s - %.0f%% sure", label, confidence * 100);
+    }
+}
@@ -16,33 +16,74 @@ package com.ek.cassavacare;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.Log;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.support.common.FileUtil;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Classifier {
     private Interpreter tflite;
-    private final String[] labels = {
+    // Second interpreter over the same mapped model, resized for batches of tiles or leaves
+    private Interpreter batchInterpreter;
+    private int batchSize;
+    // Read without the lock by the resource manager, so estimates never wait on inference
+    private volatile long batchBytes;
+    private final MappedByteBuffer model;
+    public static final String[] LABELS = {
             "Cassava Bacterial Blight",
             "Cassava Brown Streak Disease",
             "Cassava Green Mottle",
             "Cassava Mosaic Disease",
             "Healthy"
     };
-    private static final int INPUT_SIZE = 380; // Matches CenterCrop size
-    private static final float[] MEAN = {0.485f, 0.456f, 0.406f};
-    private static final float[] STD = {0.229f, 0.224f, 0.225f};
+    private final String[] labels = LABELS;
+    // Training used Resize(400) -> CenterCrop(380); keep that ratio for any model input size
+    static final float RESIZE_RATIO = 400f / 380f;
     private static final String TAG = "Classifier";
+    static final int HEALTHY_INDEX = 4;
+    private final TensorPacker packer;
+    private final ModelTier tier;
+    private final GateModel gate;
+    private final float gateThreshold;
+    private final float minConfidence;
+    private final InferenceScheduler.Policy policy;
 
     public Classifier(Context context) throws IOException {
-        tflite = new Interpreter(FileUtil.loadMappedFile(context, "cassava_model.tflite"));
-        Log.d(TAG, "Model loaded successfully");
+        this(context, new AppSettings(context).getModelTier());
+    }
+
+    public Classifier(Context context, ModelTier requestedTier) throws IOException {
+        AppSettings settings = new AppSettings(context);
+        gateThreshold = settings.getGateThreshold();
+        minConfidence = settings.getMinConfidence();
+        // A hot or power-saving device gets a smaller model and fewer threads until it recovers
+        policy = InferenceScheduler.getInstance(context).getPolicy();
+        tier = ModelTier.resolve(context, policy.cap(requestedTier));
+        model = FileUtil.loadMappedFile(context, tier.assetName);
+        tflite = new Interpreter(model, interpreterOptions());
+        try {
+            packer = TensorPacker.forInput(tflite);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        Log.d(TAG, "Model loaded successfully: " + tier + " " + packer.getLayout() + " "
+                + packer.getWidth() + "x" + packer.getHeight() + ", " + policy.threads + " threads");
+        gate = settings.isGateEnabled() ? GateModel.loadIfBundled(context, interpreterOptions()) : null;
     }
 
     public String classify(Bitmap bitmap) {
+        return analyze(bitmap).getDisplayText();
+    }
+
+    public Classification analyze(Bitmap bitmap) {
 //        if (bitmap == null || bitmap.getWidth() < INPUT_SIZE || bitmap.getHeight() < INPUT_SIZE) {
 //            Log.e(TAG, "Invalid input image: " + (bitmap == null ? "null" : bitmap.getWidth() + "x" + bitmap.getHeight()));
 //            throw new IllegalArgumentException("Invalid input image");
@@ -52,19 +93,22 @@ public class Classifier {
             throw new IllegalArgumentException("Invalid input image");
         }
 
+        // Reject hopeless photos in a few milliseconds instead of after a full inference
+        long checkStart = SystemClock.elapsedRealtime();
+        ImageQualityCheck.Report quality = ImageQualityCheck.check(bitmap);
+        Log.d(TAG, "Quality check in " + (SystemClock.elapsedRealtime() - checkStart) + " ms: " + quality);
+        if (!quality.isAcceptable()) {
+            Log.w(TAG, "Rejected before inference: " + quality.rejection);
+            return Classification.rejected(quality.rejection.message, null);
+        }
 
-        Bitmap adjustedBitmap = adjustBrightnessContrast(bitmap);
-        Bitmap resizedBitmap = resizeBitmap(adjustedBitmap, 400);
-        Log.d(TAG, "Resized dimensions: " + resizedBitmap.getWidth() + "x" + resizedBitmap.getHeight());
-        Bitmap croppedBitmap = centerCropBitmap(resizedBitmap, INPUT_SIZE, INPUT_SIZE);
-        Log.d(TAG, "Cropped dimensions: " + croppedBitmap.getWidth() + "x" + croppedBitmap.getHeight());
-        ByteBuffer inputBuffer = convertBitmapToByteBuffer(croppedBitmap);
-
-        float[][] output = new float[1][labels.length];
-        tflite.run(inputBuffer, output);
-        float[] probabilities = softmax(output[0]);
+        float[] probabilities = getProbabilities(bitmap);
         Log.d(TAG, "Probabilities: " + java.util.Arrays.toString(probabilities));
+        return interpret(probabilities);
+    }
 
+    /** Turns a probability vector into a confident label or an "uncertain" rejection. */
+    public Classification interpret(float[] probabilities) {
         int maxIndex = 0;
         float maxConfidence = probabilities[0];
         for (int i = 1; i < probabilities.length; i++) {
@@ -74,26 +118,176 @@ public class Classifier {
             }
         }
         maxConfidence = Math.min(Math.max(maxConfidence, 0.0f), 1.0f);
-        if (maxConfidence < 0.8f) {
+        if (maxConfidence < minConfidence) {
             String warningMessage = "The model is uncertain about this image. Please ensure the leaf is clearly visible and well-lit, then try again.";
             Log.w(TAG, "Low confidence: " + (maxConfidence * 100) + "%");
-            return warningMessage;
+            return Classification.rejected(warningMessage, probabilities);
         }
-        String result = String.format("%s - %.0f%% sure", labels[maxIndex], maxConfidence * 100);
-        Log.d(TAG, "Classification result: " + result);
+        Classification result = Classification.confident(labels[maxIndex], maxConfidence, probabilities);
+        Log.d(TAG, "Classification result: " + result.getDisplayText());
         return result;
     }
 
-    public float[] getProbabilities(Bitmap bitmap) {
+    // Synchronized: the packer buffers and interpreter are shared by every caller thread
+    public synchronized float[] getProbabilities(Bitmap bitmap) {
+        if (tflite == null) throw new IllegalStateException("Classifier is closed");
+        int inputWidth = packer.getWidth();
+        int inputHeight = packer.getHeight();
         Bitmap adjustedBitmap = adjustBrightnessContrast(bitmap);
-        Bitmap resizedBitmap = resizeBitmap(adjustedBitmap, 400);
-        Bitmap croppedBitmap = centerCropBitmap(resizedBitmap, INPUT_SIZE, INPUT_SIZE);
-        ByteBuffer inputBuffer = convertBitmapToByteBuffer(croppedBitmap);
+        long locateStart = SystemClock.elapsedRealtime();
+        Rect leaf = LeafLocator.locate(adjustedBitmap, inputWidth, inputHeight);
+        Log.d(TAG, "Leaf located in " + (SystemClock.elapsedRealtime() - locateStart) + " ms: " + leaf);
+        Bitmap croppedBitmap;
+        if (leaf != null) {
+            // Crop around the leaf in the decoded photo, then scale once down to the input size
+            Bitmap leafBitmap = Bitmap.createBitmap(adjustedBitmap, leaf.left, leaf.top, leaf.width(), leaf.height());
+            croppedBitmap = Bitmap.createScaledBitmap(leafBitmap, inputWidth, inputHeight, true);
+        } else {
+            Bitmap resizedBitmap = resizeBitmap(adjustedBitmap, getResizeTarget());
+            Log.d(TAG, "Resized dimensions: " + resizedBitmap.getWidth() + "x" + resizedBitmap.getHeight());
+            croppedBitmap = centerCropBitmap(resizedBitmap, inputWidth, inputHeight);
+        }
+        Log.d(TAG, "Cropped dimensions: " + croppedBitmap.getWidth() + "x" + croppedBitmap.getHeight());
+        ByteBuffer inputBuffer = packer.pack(croppedBitmap);
+
+        // Stage 1: confidently healthy leaves exit before the full model runs
+        if (gate != null) {
+            float healthy = gate.healthyProbability(croppedBitmap, inputBuffer, packer);
+            Log.d(TAG, "Gate healthy probability: " + healthy);
+            if (healthy >= gateThreshold) {
+                return healthyProbabilities(healthy);
+            }
+            inputBuffer.rewind();
+        }
+
+        // Stage 2: unsure or diseased leaves go to the full 5-class model
         float[][] output = new float[1][labels.length];
         tflite.run(inputBuffer, output);
         return softmax(output[0]);
     }
 
+    /** Spreads the gate's non-healthy mass evenly over the disease classes. */
+    private float[] healthyProbabilities(float healthy) {
+        float[] probabilities = new float[labels.length];
+        float rest = (1.0f - healthy) / (labels.length - 1);
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] = i == HEALTHY_INDEX ? healthy : rest;
+        }
+        return probabilities;
+    }
+
+    /**
+     * Runs the full model (no gate) on count inputs packed back to back in batch, each laid out as
+     * the packer from newTilePacker() produces them. Returns softmax probabilities per input.
+     */
+    synchronized float[][] getBatchProbabilities(ByteBuffer batch, int count) {
+        if (tflite == null) throw new IllegalStateException("Classifier is closed");
+        if (batchInterpreter == null) batchInterpreter = new Interpreter(model, interpreterOptions());
+        if (batchSize != count) {
+            int[] shape = tflite.getInputTensor(0).shape().clone();
+            shape[0] = count;
+            batchInterpreter.resizeInput(0, shape);
+            batchInterpreter.allocateTensors();
+            batchSize = count;
+            // Input tensor plus about as much again for intermediate activations
+            batchBytes = 2L * count * inputBytes();
+        }
+        float[][] output = new float[count][labels.length];
+        batch.rewind();
+        batchInterpreter.run(batch, output);
+        for (int i = 0; i < count; i++) output[i] = softmax(output[i]);
+        return output;
+    }
+
+    /** Classifies each leaf region of bitmap, all in a single batched interpreter call. */
+    public synchronized List<Classification> analyzeLeaves(Bitmap bitmap, List<Rect> leaves) {
+        int inputWidth = packer.getWidth();
+        int inputHeight = packer.getHeight();
+        ByteBuffer batch = null;
+        for (int i = 0; i < leaves.size(); i++) {
+            Rect leaf = leaves.get(i);
+            Bitmap crop = Bitmap.createBitmap(bitmap, leaf.left, leaf.top, leaf.width(), leaf.height());
+            ByteBuffer packed = packer.pack(Bitmap.createScaledBitmap(crop, inputWidth, inputHeight, true));
+            if (batch == null) {
+                batch = ByteBuffer.allocateDirect(packed.remaining() * leaves.size()).order(ByteOrder.nativeOrder());
+            }
+            batch.put(packed);
+        }
+        List<Classification> results = new ArrayList<>();
+        if (batch == null) return results;
+        for (float[] probabilities : getBatchProbabilities(batch, leaves.size())) {
+            results.add(interpret(probabilities));
+        }
+        return results;
+    }
+
+    /** Frees the batch interpreter; it is recreated on the next tiled or multi-leaf scan. */
+    public synchronized void releaseBatchInterpreter() {
+        if (batchInterpreter == null) return;
+        batchInterpreter.close();
+        batchInterpreter = null;
+        batchSize = 0;
+        batchBytes = 0;
+    }
+
+    /** Approximate memory held by the batch interpreter, 0 when it is not loaded. */
+    public long estimateBatchBytes() {
+        return batchBytes;
+    }
+
+    /** Approximate memory held by the whole classifier: mapped model, input buffers and interpreters. */
+    public long estimateBytes() {
+        // The packer keeps a float buffer plus pixel and scratch arrays of the input size
+        return model.capacity() + 3L * inputBytes() + batchBytes;
+    }
+
+    private long inputBytes() {
+        return (long) packer.getWidth() * packer.getHeight() * 3 * 4;
+    }
+
+    /** A packer for tiles of the model's input size and layout; one per packing thread. */
+    TensorPacker newTilePacker() {
+        return new TensorPacker(packer.getLayout(), packer.getWidth(), packer.getHeight());
+    }
+
+    public ModelTier getTier() {
+        return tier;
+    }
+
+    /** The scheduler policy this classifier was built under. */
+    public InferenceScheduler.Policy getPolicy() {
+        return policy;
+    }
+
+    private Interpreter.Options interpreterOptions() {
+        return new Interpreter.Options().setNumThreads(policy.threads);
+    }
+
+    /**
+     * Identifies the model configuration that produced a probability vector, so cached
+     * predictions are only reused by the same tier and cascade setup.
+     */
+    public String getCacheKey() {
+        // "+leaf": predictions made before leaf cropping used the plain center crop
+        String key = tier.name() + "+leaf";
+        return gate == null ? key : key + "+gate@" + gateThreshold;
+    }
+
+    /** Model input width, for cropping regions that scale to the input undistorted. */
+    public int getInputWidth() {
+        return packer.getWidth();
+    }
+
+    /** Model input height, for cropping regions that scale to the input undistorted. */
+    public int getInputHeight() {
+        return packer.getHeight();
+    }
+
+    /** Shorter-side length images are scaled to before the center crop. */
+    public int getResizeTarget() {
+        return Math.round(Math.max(packer.getWidth(), packer.getHeight()) * RESIZE_RATIO);
+    }
+
     private Bitmap adjustBrightnessContrast(Bitmap bitmap) {
 //        Bitmap adjusted = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
 //        android.graphics.Canvas canvas = new android.graphics.Canvas(adjusted);
@@ -144,23 +338,9 @@ public class Classifier {
         return Bitmap.createBitmap(bitmap, newX, newY, targetWidth, targetHeight);
     }
 
-    private ByteBuffer convertBitmapToByteBuffer(Bitmap bitmap) {
-        ByteBuffer buffer = ByteBuffer.allocateDirect(1 * INPUT_SIZE * INPUT_SIZE * 3 * 4);
-        buffer.order(ByteOrder.nativeOrder());
-        int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
-        bitmap.getPixels(pixels, 0, INPUT_SIZE, 0, 0, INPUT_SIZE, INPUT_SIZE);
-        for (int pixel : pixels) {
-            float r = ((pixel >> 16) & 0xFF) / 255.0f;
-            float g = ((pixel >> 8) & 0xFF) / 255.0f;
-            float b = (pixel & 0xFF) / 255.0f;
-            buffer.putFloat((r - MEAN[0]) / STD[0]);
-            buffer.putFloat((g - MEAN[1]) / STD[1]);
-            buffer.putFloat((b - MEAN[2]) / STD[2]);
-        }
-        return buffer;
-    }
-
-    public void close() {
+    public synchronized void close() {
+        if (gate != null) gate.close();
+        releaseBatchInterpreter();
         if (tflite != null) {
             tflite.close();
             tflite = null;
@@ -0,0 +1,239 @@
+/*
+ * Project: CassavaCare
+ * File: ClassifierLoader.java
+ * Description: Loads the classifier once in the background and hands it to everything that asked
+ *              for it while it was loading, so captures made during start-up are queued rather
+ *              than rejected. Under memory pressure the model is released and loaded again on
+ *              next use.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.lifecycle.Observer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClassifierLoader {
+    private static final String TAG = "ClassifierLoader";
+
+    public enum State { IDLE, LOADING, READY, FAILED, CLOSED }
+
+    public interface Callback {
+        void onReady(Classifier classifier);
+        void onFailed(String message);
+    }
+
+    private final Context context;
+    // All fields below are guarded by this; the classifier is only published under the lock
+    private final List<Callback> waiting = new ArrayList<>();
+    private State state = State.IDLE;
+    private Classifier classifier;
+    // Long-running jobs holding the classifier; it is not released under memory pressure meanwhile
+    private int retained;
+    // Settings changed while retained; the model is reloaded once the last holder lets go
+    private boolean stale;
+    private final ResourceManager resources;
+    private final ResourceManager.Registration modelRegistration;
+    private final ResourceManager.Registration batchRegistration;
+    private final Observer<InferenceScheduler.Status> policyObserver = this::onPolicyChanged;
+
+    /** Call on the main thread. */
+    public ClassifierLoader(Context context) {
+        this.context = context.getApplicationContext();
+        resources = ResourceManager.getInstance(context);
+        modelRegistration = resources.register("classifier", ResourceManager.Tier.MODEL, new ResourceManager.Releasable() {
+            @Override
+            public long estimateBytes() {
+                Classifier ready = getIfReady();
+                return ready != null ? ready.estimateBytes() : 0;
+            }
+
+            @Override
+            public void release() {
+                ClassifierLoader.this.release();
+            }
+        });
+        batchRegistration = resources.register("classifier batch interpreter", ResourceManager.Tier.CACHE,
+                new ResourceManager.Releasable() {
+                    @Override
+                    public long estimateBytes() {
+                        Classifier ready = getIfReady();
+                        return ready != null ? ready.estimateBatchBytes() : 0;
+                    }
+
+                    @Override
+                    public void release() {
+                        Classifier ready = getIfReady();
+                        if (ready == null || ready.estimateBatchBytes() == 0) return;
+                        // Waits for the scan in progress instead of blocking the main thread on it
+                        TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.INFERENCE,
+                                TaskDispatcher.Priority.BACKGROUND, ready::releaseBatchInterpreter);
+                    }
+                });
+        InferenceScheduler.getInstance(context).getStatus().observeForever(policyObserver);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /** The loaded classifier, or null while it is still loading or failed to load. */
+    public synchronized Classifier getIfReady() {
+        return state == State.READY ? classifier : null;
+    }
+
+    /** Starts loading unless a load is already running or done; a failed load is retried. */
+    public void load() {
+        synchronized (this) {
+            if (state != State.IDLE && state != State.FAILED) return;
+            state = State.LOADING;
+        }
+        TaskDispatcher.Task<Void> task = TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.INFERENCE,
+                TaskDispatcher.Priority.USER, this::loadNow);
+        if (task.isCancelled()) finish(null, "Model loading was rejected, please try again.");
+    }
+
+    /**
+     * Calls back once the classifier is ready: right away on the calling thread when it already is,
+     * otherwise on the loading thread as soon as loading ends. Starts a load if none is running.
+     */
+    public void whenReady(Callback callback) {
+        Classifier ready = null;
+        boolean closed = false;
+        synchronized (this) {
+            if (state == State.READY) {
+                ready = classifier;
+            } else if (state == State.CLOSED) {
+                closed = true;
+            } else {
+                waiting.add(callback);
+            }
+        }
+        if (ready != null) {
+            callback.onReady(ready);
+        } else if (closed) {
+            callback.onFailed("Model was closed");
+        } else {
+            load();
+        }
+    }
+
+    /** Keeps the classifier loaded until the matching unretain(), e.g. for a bulk import. */
+    public synchronized void retain() {
+        retained++;
+    }
+
+    public void unretain() {
+        synchronized (this) {
+            if (retained > 0) retained--;
+            if (retained > 0 || !stale) return;
+        }
+        reload();
+    }
+
+    /**
+     * Frees the loaded model, e.g. under memory pressure. Unlike close() the loader stays usable:
+     * the next whenReady() or load() loads it again.
+     */
+    public void release() {
+        Classifier toClose;
+        synchronized (this) {
+            if (state != State.READY || retained > 0) return;
+            state = State.IDLE;
+            toClose = classifier;
+            classifier = null;
+        }
+        Log.d(TAG, "Releasing classifier");
+        TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.INFERENCE, TaskDispatcher.Priority.USER, toClose::close);
+    }
+
+    /**
+     * Loads a loaded model again so changed settings such as the tier take effect. Returns false
+     * when the classifier is retained: the current model is kept until the last unretain().
+     */
+    public boolean reload() {
+        synchronized (this) {
+            if (state != State.READY) return true;
+            if (retained > 0) {
+                stale = true;
+                return false;
+            }
+            stale = false;
+        }
+        release();
+        load();
+        return true;
+    }
+
+    /** Drops waiting callbacks and releases the model once any running inference has finished. Call on the main thread. */
+    public void close() {
+        InferenceScheduler.getInstance(context).getStatus().removeObserver(policyObserver);
+        resources.unregister(modelRegistration);
+        resources.unregister(batchRegistration);
+        Classifier toClose;
+        synchronized (this) {
+            state = State.CLOSED;
+            toClose = classifier;
+            classifier = null;
+            waiting.clear();
+        }
+        // The inference pool has a single thread, so this runs after the analysis in progress
+        if (toClose != null) {
+            TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.INFERENCE, TaskDispatcher.Priority.USER, toClose::close);
+        }
+    }
+
+    // Rebuilds a loaded classifier under the new policy; the reload waits for the scan in progress
+    private void onPolicyChanged(InferenceScheduler.Status status) {
+        Classifier ready = getIfReady();
+        if (ready == null || ready.getPolicy() == status.policy) return;
+        Log.d(TAG, "Reloading classifier for the " + status.policy + " policy");
+        reload();
+    }
+
+    private void loadNow() {
+        Classifier loaded = null;
+        String error = null;
+        try {
+            Log.d(TAG, "Initializing Classifier...");
+            loaded = new Classifier(context);
+            Log.d(TAG, "Classifier initialized successfully");
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to initialize Classifier: " + e.getMessage());
+            error = "Model loading failed";
+        }
+        finish(loaded, error);
+    }
+
+    private void finish(Classifier loaded, String error) {
+        List<Callback> ready;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                // Closed while loading; nobody is left to use it
+                if (loaded != null) loaded.close();
+                return;
+            }
+            classifier = loaded;
+            state = loaded != null ? State.READY : State.FAILED;
+            ready = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        for (Callback callback : ready) {
+            if (loaded != null) {
+                callback.onReady(loaded);
+            } else {
+                callback.onFailed(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Project: CassavaCare
+ * File: DashboardViewModel.java
+ * Description: Activity-scoped state for the home dashboard: the most recent scan, scan totals,
+ *              per-disease counts, weekly prevalence trends and the field heatmap, kept up to date by Room
+ *              as scans are added.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.app.Application;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.Transformations;
+import com.github.mikephil.charting.data.Entry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class DashboardViewModel extends AndroidViewModel {
+    private static final String[] FARMING_TIPS = {
+            "Rotate crops every 2-3 years to prevent disease buildup.",
+            "Use disease-resistant cassava varieties for better yield.",
+            "Monitor plants regularly with CassavaCare scans.",
+            "Apply organic fertilizers to boost plant health.",
+            "Control whitefly vectors to prevent Cassava Mosaic Disease."
+    };
+
+    /** Totals derived from the per-disease counts. */
+    public static class Stats {
+        public final int total;
+        public final String mostCommonDisease;
+        public final List<DiseaseCount> counts;
+
+        Stats(List<DiseaseCount> counts) {
+            this.counts = counts;
+            int total = 0;
+            int maxCount = 0;
+            String mostCommon = "None";
+            for (DiseaseCount count : counts) {
+                total += count.count;
+                if (count.count > maxCount) {
+                    maxCount = count.count;
+                    mostCommon = count.disease;
+                }
+            }
+            this.total = total;
+            this.mostCommonDisease = mostCommon;
+        }
+    }
+
+    // Points per trend line after downsampling; years of weekly buckets still draw smoothly
+    private static final int MAX_TREND_POINTS = 60;
+    // Heatmap: a 4 x 4 km area around the latest geotagged scan, in cells of about 150 x 150 m
+    private static final double HEATMAP_RADIUS_M = 2000;
+    private static final int HEATMAP_PRECISION = 7;
+
+    private final LiveData<ScanSummary> recentScan;
+    private final LiveData<Stats> stats;
+    private final LiveData<Map<String, List<Entry>>> trends;
+    private final MediatorLiveData<HeatmapView.Grid> heatmap = new MediatorLiveData<>();
+    private TaskDispatcher.Task<Void> heatmapTask;
+    private final GeoQueries geoQueries;
+    private final String farmingTip;
+
+    public DashboardViewModel(@NonNull Application application) {
+        super(application);
+        ScanResultDao dao = AppDatabase.getInstance(application).scanResultDao();
+        // Both queries re-run only when scan_results changes, not each time Home is shown
+        recentScan = dao.observeMostRecent();
+        stats = Transformations.map(dao.observeDiseaseCounts(), Stats::new);
+        trends = Transformations.map(dao.observeRollups(ScanRollup.PERIOD_WEEK), DashboardViewModel::toTrends);
+        geoQueries = new GeoQueries(AppDatabase.getInstance(application));
+        // The cell counts are recomputed in the background only when geotagged scans change
+        heatmap.addSource(dao.observeGeotaggedCount(), count -> {
+            // A reload still waiting in the queue is superseded by this one
+            if (heatmapTask != null) heatmapTask.cancel(false);
+            heatmapTask = TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.ANALYTICS,
+                    TaskDispatcher.Priority.BACKGROUND, this::loadHeatmap);
+        });
+        farmingTip = FARMING_TIPS[new Random().nextInt(FARMING_TIPS.length)];
+    }
+
+    public LiveData<ScanSummary> getRecentScan() {
+        return recentScan;
+    }
+
+    public LiveData<Stats> getStats() {
+        return stats;
+    }
+
+    /** Share of each week's scans per disease, in percent, keyed by disease; x is days since the epoch. */
+    public LiveData<Map<String, List<Entry>>> getTrends() {
+        return trends;
+    }
+
+    // Rollups are sorted by bucket, so one pass groups them into weeks
+    static Map<String, List<Entry>> toTrends(List<ScanRollup> rollups) {
+        TreeMap<Long, Map<String, Integer>> weeks = new TreeMap<>();
+        for (ScanRollup rollup : rollups) {
+            Map<String, Integer> week = weeks.get(rollup.bucketStart);
+            if (week == null) {
+                week = new LinkedHashMap<>();
+                weeks.put(rollup.bucketStart, week);
+            }
+            week.put(rollup.disease, rollup.count);
+        }
+
+        Map<String, List<Entry>> trends = new LinkedHashMap<>();
+        for (String label : Classifier.LABELS) {
+            if (label.equals(Classifier.LABELS[Classifier.HEALTHY_INDEX])) continue;
+            List<Entry> points = new ArrayList<>(weeks.size());
+            for (Map.Entry<Long, Map<String, Integer>> week : weeks.entrySet()) {
+                int total = 0;
+                for (int count : week.getValue().values()) total += count;
+                if (total == 0) continue;
+                Integer count = week.getValue().get(label);
+                float x = week.getKey() / (float) ScanRollup.DAY_MS;
+                points.add(new Entry(x, 100f * (count != null ? count : 0) / total));
+            }
+            trends.put(label, Downsampler.lttb(points, MAX_TREND_POINTS));
+        }
+        return trends;
+    }
+
+    /** Cell counts around the most recent geotagged scan; null when no scan has a location. */
+    public LiveData<HeatmapView.Grid> getHeatmap() {
+        return heatmap;
+    }
+
+    private void loadHeatmap() {
+        GeoScan latest = geoQueries.latest();
+        if (latest == null) {
+            heatmap.postValue(null);
+            return;
+        }
+        double[] box = Geohash.boxAround(latest.latitude, latest.longitude, HEATMAP_RADIUS_M);
+        Map<String, GeoCellCount> cells = geoQueries.cellCounts(box[0], box[1], box[2], box[3], HEATMAP_PRECISION);
+        heatmap.postValue(new HeatmapView.Grid(box, latest.latitude, latest.longitude, cells));
+    }
+
+    @Override
+    protected void onCleared() {
+        if (heatmapTask != null) heatmapTask.cancel(true);
+    }
+
+    public String getFarmingTip() {
+        return farmingTip;
+    }
+}
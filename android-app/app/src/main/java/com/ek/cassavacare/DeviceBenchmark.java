@@ -0,0 +1,86 @@
+/*
+ * Project: CassavaCare
+ * File: DeviceBenchmark.java
+ * Description: One-off inference benchmark that picks the most accurate model tier the
+ *              device can run within the latency budget.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.support.common.FileUtil;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+public class DeviceBenchmark {
+    private static final String TAG = "DeviceBenchmark";
+    // Leaves headroom for decoding and preprocessing so a full scan stays under a second
+    private static final long LATENCY_BUDGET_MS = 600;
+    private static final int WARMUP_RUNS = 1;
+    private static final int TIMED_RUNS = 3;
+    private static final int NUM_CLASSES = 5;
+
+    /** Benchmarks every bundled tier, persists the chosen one and returns it. */
+    public static ModelTier run(Context context) {
+        List<ModelTier> tiers = ModelTier.available(context);
+        ModelTier chosen = tiers.get(0);
+        StringBuilder summary = new StringBuilder();
+
+        for (ModelTier tier : tiers) {
+            long latency = measure(context, tier);
+            if (summary.length() > 0) summary.append(", ");
+            summary.append(tier.label).append(": ")
+                    .append(latency < 0 ? "failed" : latency + " ms");
+            if (latency >= 0 && latency <= LATENCY_BUDGET_MS) {
+                chosen = tier; // Tiers are ordered cheapest first, so the last fit is the most accurate
+            }
+        }
+
+        Log.d(TAG, "Benchmark: " + summary + " -> " + chosen);
+        new AppSettings(context).setBenchmarkResult(chosen, summary.toString());
+        return chosen;
+    }
+
+    /** Median wall time of pack + inference for one tier, or -1 if it could not be loaded. */
+    private static long measure(Context context, ModelTier tier) {
+        Interpreter interpreter = null;
+        try {
+            interpreter = new Interpreter(FileUtil.loadMappedFile(context, tier.assetName));
+            TensorPacker packer = TensorPacker.forInput(interpreter);
+            Bitmap blank = Bitmap.createBitmap(packer.getWidth(), packer.getHeight(), Bitmap.Config.ARGB_8888);
+            float[][] output = new float[1][NUM_CLASSES];
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                interpreter.run(packer.pack(blank), output);
+            }
+            long[] timings = new long[TIMED_RUNS];
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                long start = SystemClock.elapsedRealtime();
+                ByteBuffer input = packer.pack(blank);
+                interpreter.run(input, output);
+                timings[i] = SystemClock.elapsedRealtime() - start;
+            }
+            blank.recycle();
+            Arrays.sort(timings);
+            return timings[TIMED_RUNS / 2];
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Benchmark failed for " + tier + ": " + e.getMessage());
+            return -1;
+        } finally {
+            if (interpreter != null) interpreter.close();
+        }
+    }
+}
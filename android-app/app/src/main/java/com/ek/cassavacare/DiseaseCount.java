@@ -0,0 +1,19 @@
+/*
+ * Project: CassavaCare
+ * File: DiseaseCount.java
+ * Description: Projection of the number of scans recorded for one disease label.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+public class DiseaseCount {
+    public String disease;
+    public int count;
+}
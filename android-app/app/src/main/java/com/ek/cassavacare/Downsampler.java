@@ -0,0 +1,74 @@
+/*
+ * Project: CassavaCare
+ * File: Downsampler.java
+ * Description: Largest-Triangle-Three-Buckets downsampling for chart series, keeping the visual
+ *              shape of long histories while bounding the number of points drawn.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import com.github.mikephil.charting.data.Entry;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Downsampler {
+    private Downsampler() {
+    }
+
+    /**
+     * Picks at most threshold points from data, which must be sorted by x. The first and last
+     * points are always kept; each bucket in between keeps the point forming the largest
+     * triangle with the previous pick and the average of the next bucket.
+     */
+    public static List<Entry> lttb(List<Entry> data, int threshold) {
+        int size = data.size();
+        if (threshold >= size || threshold < 3) return data;
+
+        List<Entry> sampled = new ArrayList<>(threshold);
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int previous = 0;
+        sampled.add(data.get(0));
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, the third corner of the triangle
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += data.get(i).getX();
+                avgY += data.get(i).getY();
+            }
+            int nextCount = Math.max(nextEnd - nextStart, 1);
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            Entry anchor = data.get(previous);
+            double maxArea = -1;
+            int picked = start;
+            for (int i = start; i < end; i++) {
+                Entry point = data.get(i);
+                double area = Math.abs((anchor.getX() - avgX) * (point.getY() - anchor.getY())
+                        - (anchor.getX() - point.getX()) * (avgY - anchor.getY()));
+                if (area > maxArea) {
+                    maxArea = area;
+                    picked = i;
+                }
+            }
+            sampled.add(data.get(picked));
+            previous = picked;
+        }
+
+        sampled.add(data.get(size - 1));
+        return sampled;
+    }
+}
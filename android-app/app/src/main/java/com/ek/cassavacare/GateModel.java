@@ -0,0 +1,101 @@
+/*
+ * Project: CassavaCare
+ * File: GateModel.java
+ * Description: Small "healthy vs diseased" TFLite model run ahead of the full classifier so
+ *              confidently healthy leaves can skip the expensive 5-class model.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.support.common.FileUtil;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class GateModel {
+    public static final String ASSET_NAME = "cassava_gate.tflite";
+    private static final String TAG = "GateModel";
+
+    private Interpreter tflite;
+    private final TensorPacker packer;
+    private final float[][] output;
+
+    private GateModel(Interpreter tflite, TensorPacker packer) {
+        this.tflite = tflite;
+        this.packer = packer;
+        // Either [1, 2] softmax logits (healthy, diseased) or [1, 1] sigmoid logit for "diseased"
+        output = new float[1][tflite.getOutputTensor(0).shape()[1]];
+    }
+
+    public static boolean isBundled(Context context) {
+        try {
+            return Arrays.asList(context.getAssets().list("")).contains(ASSET_NAME);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads the bundled gate model with the same interpreter options as the classifier, or returns
+     * null when the APK does not ship one.
+     */
+    public static GateModel loadIfBundled(Context context, Interpreter.Options options) {
+        if (!isBundled(context)) return null;
+        Interpreter interpreter = null;
+        try {
+            interpreter = new Interpreter(FileUtil.loadMappedFile(context, ASSET_NAME), options);
+            GateModel gate = new GateModel(interpreter, TensorPacker.forInput(interpreter));
+            Log.d(TAG, "Gate model loaded: " + gate.packer.getLayout() + " "
+                    + gate.packer.getWidth() + "x" + gate.packer.getHeight());
+            return gate;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to load gate model, running without it: " + e.getMessage());
+            if (interpreter != null) interpreter.close();
+            return null;
+        }
+    }
+
+    /**
+     * Probability that the leaf is healthy. When the gate shares the classifier's input spec the
+     * already packed tensor is reused as-is; otherwise the cropped bitmap is rescaled and packed
+     * into the gate's own buffer.
+     */
+    public float healthyProbability(Bitmap cropped, ByteBuffer sharedInput, TensorPacker sharedPacker) {
+        ByteBuffer input;
+        if (packer.isCompatibleWith(sharedPacker)) {
+            sharedInput.rewind();
+            input = sharedInput;
+        } else {
+            Bitmap scaled = Bitmap.createScaledBitmap(cropped, packer.getWidth(), packer.getHeight(), true);
+            input = packer.pack(scaled);
+        }
+        tflite.run(input, output);
+
+        float[] logits = output[0];
+        if (logits.length == 1) {
+            return 1.0f - (float) (1.0 / (1.0 + Math.exp(-logits[0])));
+        }
+        float max = Math.max(logits[0], logits[1]);
+        double healthy = Math.exp(logits[0] - max);
+        double diseased = Math.exp(logits[1] - max);
+        return (float) (healthy / (healthy + diseased));
+    }
+
+    public void close() {
+        if (tflite != null) {
+            tflite.close();
+            tflite = null;
+        }
+    }
+}
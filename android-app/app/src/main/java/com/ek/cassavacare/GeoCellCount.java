@@ -0,0 +1,20 @@
+/*
+ * Project: CassavaCare
+ * File: GeoCellCount.java
+ * Description: Projection of the scan counts inside one geohash cell, for the heatmap.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+public class GeoCellCount {
+    public String cell;
+    public int total;
+    public int diseased;
+}
@@ -0,0 +1,79 @@
+/*
+ * Project: CassavaCare
+ * File: GeoQueries.java
+ * Description: Spatial queries over geotagged scans (bounding box, radius and per-cell counts),
+ *              answered with a few geohash prefix range scans and exact filtering of the candidates.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GeoQueries {
+    // Prefix ranges per query; few enough to stay cheap, enough that candidates hug the box
+    private static final int MAX_RANGES = 9;
+
+    private final ScanResultDao dao;
+
+    public GeoQueries(AppDatabase db) {
+        this.dao = db.scanResultDao();
+    }
+
+    /** Scans inside the box. Boxes crossing the antimeridian are not supported. */
+    public List<GeoScan> withinBox(double minLat, double minLon, double maxLat, double maxLon) {
+        int precision = Geohash.coveringPrecision(minLat, minLon, maxLat, maxLon, MAX_RANGES);
+        List<GeoScan> scans = new ArrayList<>();
+        for (String prefix : Geohash.coveringCells(minLat, minLon, maxLat, maxLon, precision)) {
+            for (GeoScan scan : dao.inGeohashRange(prefix, Geohash.rangeEnd(prefix))) {
+                if (scan.latitude >= minLat && scan.latitude <= maxLat
+                        && scan.longitude >= minLon && scan.longitude <= maxLon) {
+                    scans.add(scan);
+                }
+            }
+        }
+        return scans;
+    }
+
+    /** Scans within radiusMeters of a point: the enclosing box, then exact distance on the candidates. */
+    public List<GeoScan> withinRadius(double latitude, double longitude, double radiusMeters) {
+        double[] box = Geohash.boxAround(latitude, longitude, radiusMeters);
+        List<GeoScan> scans = new ArrayList<>();
+        for (GeoScan scan : withinBox(box[0], box[1], box[2], box[3])) {
+            if (Geohash.distanceMeters(latitude, longitude, scan.latitude, scan.longitude) <= radiusMeters) {
+                scans.add(scan);
+            }
+        }
+        return scans;
+    }
+
+    /**
+     * Scan counts per geohash cell of cellPrecision over the box, keyed by cell. Cells on the edge
+     * may include scans just outside the box, which a heatmap can ignore.
+     */
+    public Map<String, GeoCellCount> cellCounts(double minLat, double minLon, double maxLat, double maxLon,
+                                                int cellPrecision) {
+        int precision = Math.min(Geohash.coveringPrecision(minLat, minLon, maxLat, maxLon, MAX_RANGES), cellPrecision);
+        Map<String, GeoCellCount> counts = new HashMap<>();
+        for (String prefix : Geohash.coveringCells(minLat, minLon, maxLat, maxLon, precision)) {
+            for (GeoCellCount count : dao.cellCounts(prefix, Geohash.rangeEnd(prefix), cellPrecision)) {
+                counts.put(count.cell, count);
+            }
+        }
+        return counts;
+    }
+
+    /** Most recent geotagged scan, a natural center for the map; null when none exist. */
+    public GeoScan latest() {
+        return dao.latestGeotagged();
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * Project: CassavaCare
+ * File: GeoScan.java
+ * Description: Projection of a geotagged scan: its position, disease and time, without images.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+public class GeoScan {
+    public int id;
+    public double latitude;
+    public double longitude;
+    public String disease;
+    public long timestamp;
+}
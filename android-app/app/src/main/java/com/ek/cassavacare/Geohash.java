@@ -0,0 +1,147 @@
+/*
+ * Project: CassavaCare
+ * File: Geohash.java
+ * Description: Geohash encoding and cell geometry, so spatial lookups become prefix range scans
+ *              on an indexed text column instead of distance math over every row.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class Geohash {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    // Sorts after every geohash character, so [prefix, prefix + RANGE_END) covers the prefix
+    private static final char RANGE_END = '{';
+    private static final double EARTH_RADIUS_M = 6_371_000;
+
+    /** Precision stored with each scan: 9 characters is a cell of about 5 x 5 m. */
+    public static final int STORED_PRECISION = 9;
+
+    private Geohash() {
+    }
+
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int index = 0;
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    index = (index << 1) | 1;
+                    minLon = mid;
+                } else {
+                    index <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    index = (index << 1) | 1;
+                    minLat = mid;
+                } else {
+                    index <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(index));
+                bit = 0;
+                index = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /** Bounds of a cell as {minLat, minLon, maxLat, maxLon}. */
+    public static double[] bounds(String hash) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        boolean evenBit = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int index = BASE32.indexOf(hash.charAt(i));
+            if (index < 0) throw new IllegalArgumentException("Invalid geohash: " + hash);
+            for (int b = 4; b >= 0; b--) {
+                boolean set = ((index >> b) & 1) == 1;
+                if (evenBit) {
+                    double mid = (minLon + maxLon) / 2;
+                    if (set) minLon = mid; else maxLon = mid;
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (set) minLat = mid; else maxLat = mid;
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[]{minLat, minLon, maxLat, maxLon};
+    }
+
+    public static double cellHeight(int precision) {
+        return 180.0 / (1L << (5 * precision / 2));
+    }
+
+    public static double cellWidth(int precision) {
+        return 360.0 / (1L << ((5 * precision + 1) / 2));
+    }
+
+    /** Exclusive upper bound of the range of hashes starting with prefix. */
+    public static String rangeEnd(String prefix) {
+        return prefix + RANGE_END;
+    }
+
+    /** Cells of the given precision that together cover the box. */
+    public static Set<String> coveringCells(double minLat, double minLon, double maxLat, double maxLon, int precision) {
+        double height = cellHeight(precision);
+        double width = cellWidth(precision);
+        Set<String> cells = new LinkedHashSet<>();
+        // Step by whole cells from the cell holding the south-west corner
+        double[] first = bounds(encode(minLat, minLon, precision));
+        for (double lat = first[0] + height / 2; lat - height / 2 <= maxLat && lat < 90; lat += height) {
+            for (double lon = first[1] + width / 2; lon - width / 2 <= maxLon && lon < 180; lon += width) {
+                cells.add(encode(lat, lon, precision));
+            }
+        }
+        return cells;
+    }
+
+    /** Finest precision whose covering of the box needs at most maxCells cells. */
+    public static int coveringPrecision(double minLat, double minLon, double maxLat, double maxLon, int maxCells) {
+        for (int precision = STORED_PRECISION; precision > 1; precision--) {
+            long rows = (long) Math.ceil((maxLat - minLat) / cellHeight(precision)) + 1;
+            long columns = (long) Math.ceil((maxLon - minLon) / cellWidth(precision)) + 1;
+            if (rows * columns <= maxCells) return precision;
+        }
+        return 1;
+    }
+
+    /** Great-circle distance in meters. */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /** Box around a point that contains every point within radiusMeters, as {minLat, minLon, maxLat, maxLon}. */
+    public static double[] boxAround(double latitude, double longitude, double radiusMeters) {
+        double dLat = Math.toDegrees(radiusMeters / EARTH_RADIUS_M);
+        double cosLat = Math.max(Math.cos(Math.toRadians(latitude)), 1e-6);
+        double dLon = Math.min(Math.toDegrees(radiusMeters / (EARTH_RADIUS_M * cosLat)), 180);
+        return new double[]{Math.max(latitude - dLat, -90), Math.max(longitude - dLon, -180),
+                Math.min(latitude + dLat, 90), Math.min(longitude + dLon, 180)};
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Project: CassavaCare
+ * File: HeatmapView.java
+ * Description: Offline grid heatmap of geotagged scans. Each geohash cell is shaded by how many
+ *              scans it holds and coloured from green (healthy) to red (mostly diseased).
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import java.util.Collections;
+import java.util.Map;
+
+public class HeatmapView extends View {
+    /** Cell counts over a box, as produced by GeoQueries.cellCounts. */
+    public static class Grid {
+        public final double minLat, minLon, maxLat, maxLon;
+        public final double centerLat, centerLon;
+        public final Map<String, GeoCellCount> cells;
+
+        public Grid(double[] box, double centerLat, double centerLon, Map<String, GeoCellCount> cells) {
+            this.minLat = box[0];
+            this.minLon = box[1];
+            this.maxLat = box[2];
+            this.maxLon = box[3];
+            this.centerLat = centerLat;
+            this.centerLon = centerLon;
+            this.cells = cells;
+        }
+    }
+
+    private static final int HEALTHY_COLOR = Color.parseColor("#43A047");
+    private static final int DISEASED_COLOR = Color.parseColor("#C62828");
+
+    private final Paint cellPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint gridPaint = new Paint();
+    private final Paint markerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private Grid grid;
+    private int maxTotal;
+
+    public HeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public HeatmapView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        gridPaint.setColor(ContextCompat.getColor(context, R.color.text_secondary));
+        gridPaint.setAlpha(40);
+        gridPaint.setStyle(Paint.Style.STROKE);
+        markerPaint.setColor(ContextCompat.getColor(context, R.color.text_primary));
+        markerPaint.setStyle(Paint.Style.STROKE);
+        markerPaint.setStrokeWidth(3f);
+    }
+
+    public void setGrid(Grid grid) {
+        this.grid = grid;
+        maxTotal = 1;
+        for (GeoCellCount cell : grid != null ? grid.cells.values() : Collections.<GeoCellCount>emptyList()) {
+            maxTotal = Math.max(maxTotal, cell.total);
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (grid == null) return;
+        float width = getWidth();
+        float height = getHeight();
+        canvas.drawRect(0, 0, width - 1, height - 1, gridPaint);
+
+        for (GeoCellCount cell : grid.cells.values()) {
+            double[] bounds = Geohash.bounds(cell.cell);
+            float left = x(bounds[1], width);
+            float right = x(bounds[3], width);
+            float top = y(bounds[2], height);
+            float bottom = y(bounds[0], height);
+            if (right < 0 || left > width || bottom < 0 || top > height) continue;
+
+            float diseasedShare = cell.total > 0 ? (float) cell.diseased / cell.total : 0f;
+            // Square root keeps sparse cells visible next to dense ones
+            float density = (float) Math.sqrt((double) cell.total / maxTotal);
+            int color = blend(HEALTHY_COLOR, DISEASED_COLOR, diseasedShare);
+            cellPaint.setColor(color);
+            cellPaint.setAlpha(Math.round(60 + 195 * density));
+            canvas.drawRect(left, top, right, bottom, cellPaint);
+        }
+
+        // Most recent scan location
+        float cx = x(grid.centerLon, width);
+        float cy = y(grid.centerLat, height);
+        canvas.drawCircle(cx, cy, 10f, markerPaint);
+    }
+
+    private float x(double lon, float width) {
+        return (float) ((lon - grid.minLon) / (grid.maxLon - grid.minLon) * width);
+    }
+
+    private float y(double lat, float height) {
+        return (float) ((grid.maxLat - lat) / (grid.maxLat - grid.minLat) * height);
+    }
+
+    private static int blend(int from, int to, float t) {
+        return Color.rgb(
+                Math.round(Color.red(from) + (Color.red(to) - Color.red(from)) * t),
+                Math.round(Color.green(from) + (Color.green(to) - Color.green(from)) * t),
+                Math.round(Color.blue(from) + (Color.blue(to) - Color.blue(from)) * t));
+    }
+}
@@ -2,6 +2,7 @@
  * Project: CassavaCare
  * File: HistoryAdapter.java
  * Description: Adapter for displaying the history of scanned cassava leaves, including results, timestamps, and images.
+ *              Diffs list updates off the main thread so only changed rows rebind.
  *
  * Author: Emmanuel Kirui Barkacha
  * Email: ebarkacha@aimsammi.org
@@ -23,21 +24,48 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.ek.cassavacare.R;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+
+public class HistoryAdapter extends ListAdapter<ScanSummary, HistoryAdapter.ViewHolder> {
+    // Rows are matched by primary key; ListAdapter runs this on a background thread
+    private static final DiffUtil.ItemCallback<ScanSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<ScanSummary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ScanSummary oldItem, @NonNull ScanSummary newItem) {
+            return oldItem.id == newItem.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ScanSummary oldItem, @NonNull ScanSummary newItem) {
+            return oldItem.timestamp == newItem.timestamp
+                    && oldItem.confidence == newItem.confidence
+                    && Objects.equals(oldItem.result, newItem.result)
+                    && Objects.equals(oldItem.disease, newItem.disease)
+                    && Arrays.equals(oldItem.thumbnail, newItem.thumbnail);
+        }
+    };
 
-public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
-    private List<ScanResult> results;
+    private final AppDatabase db;
 
-    public HistoryAdapter(List<ScanResult> results) {
-        this.results = results;
+    public HistoryAdapter(AppDatabase db) {
+        super(DIFF_CALLBACK);
+        this.db = db;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).id;
     }
 
     @NonNull
@@ -49,14 +77,14 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        ScanResult result = results.get(position);
+        ScanSummary result = getItem(position);
         holder.tvResult.setText(result.result);
         String date = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault()).format(new Date(result.timestamp));
         holder.tvDate.setText(date);
 
-        // Load image from byte array
-        if (result.image != null && result.image.length > 0) {
-            Bitmap bitmap = BitmapFactory.decodeByteArray(result.image, 0, result.image.length);
+        // Load thumbnail from byte array
+        if (result.thumbnail != null && result.thumbnail.length > 0) {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(result.thumbnail, 0, result.thumbnail.length);
             holder.imgThumbnail.setImageBitmap(bitmap);
             holder.imgThumbnail.setVisibility(View.VISIBLE);
         } else {
@@ -64,9 +92,15 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
         }
 
         holder.itemView.setOnClickListener(v -> {
-            if (position != RecyclerView.NO_POSITION) {
-                ScanResult rst = results.get(position);
-                showScanDetailDialog(rst,v.getContext());
+            // Resolved at click time; the bound position goes stale as rows are inserted above
+            int current = holder.getBindingAdapterPosition();
+            if (current != RecyclerView.NO_POSITION) {
+                // The list only holds thumbnails; fetch the full record for the dialog
+                int id = getItem(current).id;
+                TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DISK_IO, TaskDispatcher.Priority.USER, () -> {
+                    ScanResult rst = db.scanResultDao().getById(id);
+                    if (rst != null) v.post(() -> showScanDetailDialog(rst, v.getContext()));
+                });
             }
         });
     }
@@ -144,11 +178,6 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
     }
 
 
-    @Override
-    public int getItemCount() {
-        return results.size();
-    }
-
     static class ViewHolder extends RecyclerView.ViewHolder {
         TextView tvResult, tvDate;
         ImageView imgThumbnail;
@@ -0,0 +1,193 @@
+/*
+ * Project: CassavaCare
+ * File: HistoryExporter.java
+ * Description: Exports the scan history to a ZIP (scans.csv plus one image per scan) through the
+ *              Storage Access Framework, paging through the database so memory use stays constant.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+import android.util.Log;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class HistoryExporter {
+    private static final String TAG = "HistoryExporter";
+    public static final String CSV_ENTRY = "scans.csv";
+    public static final String IMAGE_DIR = "images/";
+    public static final String CSV_HEADER = "id,timestamp,date,disease,confidence,result,image,latitude,longitude";
+
+    // Rows per cursor page; image pages are small so a page never outgrows the cursor window
+    private static final int METADATA_PAGE = 500;
+    private static final int IMAGE_PAGE = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public interface Listener {
+        void onProgress(int done, int total);
+        void onFinished(boolean cancelled, int exported);
+        void onFailed(String message);
+    }
+
+    private final Context context;
+    private final AppDatabase db;
+    private final Uri target;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    private HistoryExporter(Context context, Uri target, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.db = AppDatabase.getInstance(context);
+        this.target = target;
+        this.listener = listener;
+    }
+
+    /** Starts exporting into a document created through ACTION_CREATE_DOCUMENT. */
+    public static HistoryExporter start(Context context, Uri target, Listener listener) {
+        HistoryExporter exporter = new HistoryExporter(context, target, listener);
+        // Long-running, so it queues behind user-facing reads in the disk pool
+        TaskDispatcher.Task<Void> task = TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DISK_IO,
+                TaskDispatcher.Priority.BACKGROUND, exporter::export);
+        if (task.isCancelled()) exporter.mainHandler.post(() -> listener.onFailed("Too much work queued, try again"));
+        return exporter;
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    private void export() {
+        ScanResultDao dao = db.scanResultDao();
+        // Rows scanned after this point are left out, so both passes see the same set
+        int maxId = dao.maxId();
+        int rows = dao.countUpTo(maxId);
+        int total = rows + dao.countImagesUpTo(maxId);
+        int done = 0;
+
+        try (OutputStream out = context.getContentResolver().openOutputStream(target, "wt")) {
+            if (out == null) throw new IOException("Cannot open " + target);
+            ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+
+            // Metadata first, so a reader can index the archive before the images arrive
+            zip.putNextEntry(new ZipEntry(CSV_ENTRY));
+            zip.write((CSV_HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+            StringBuilder line = new StringBuilder();
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            int afterId = 0;
+            while (!cancelled.get()) {
+                int pageRows = 0;
+                try (Cursor cursor = dao.metadataPage(afterId, maxId, METADATA_PAGE)) {
+                    while (cursor.moveToNext()) {
+                        int id = cursor.getInt(0);
+                        long timestamp = cursor.getLong(4);
+                        boolean hasImage = cursor.getInt(5) != 0;
+                        line.setLength(0);
+                        line.append(id).append(',')
+                                .append(timestamp).append(',')
+                                .append(format.format(new Date(timestamp))).append(',')
+                                .append(csv(cursor.isNull(2) ? "" : cursor.getString(2))).append(',')
+                                .append(String.format(Locale.US, "%.4f", cursor.getFloat(3))).append(',')
+                                .append(csv(cursor.isNull(1) ? "" : cursor.getString(1))).append(',')
+                                .append(hasImage ? imageName(id) : "").append(',')
+                                .append(cursor.isNull(6) ? "" : String.valueOf(cursor.getDouble(6))).append(',')
+                                .append(cursor.isNull(7) ? "" : String.valueOf(cursor.getDouble(7)))
+                                .append('\n');
+                        zip.write(line.toString().getBytes(StandardCharsets.UTF_8));
+                        afterId = id;
+                        pageRows++;
+                    }
+                }
+                if (pageRows == 0) break;
+                done += pageRows;
+                postProgress(done, total);
+            }
+            zip.closeEntry();
+
+            // Images are already compressed, so they are stored rather than deflated again
+            afterId = 0;
+            CRC32 crc = new CRC32();
+            while (!cancelled.get()) {
+                int pageRows = 0;
+                try (Cursor cursor = dao.imagePage(afterId, maxId, IMAGE_PAGE)) {
+                    while (cursor.moveToNext() && !cancelled.get()) {
+                        int id = cursor.getInt(0);
+                        byte[] image = cursor.getBlob(1);
+                        crc.reset();
+                        crc.update(image);
+                        ZipEntry entry = new ZipEntry(IMAGE_DIR + imageName(id));
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(image.length);
+                        entry.setCompressedSize(image.length);
+                        entry.setCrc(crc.getValue());
+                        zip.putNextEntry(entry);
+                        zip.write(image);
+                        zip.closeEntry();
+                        afterId = id;
+                        pageRows++;
+                    }
+                }
+                if (pageRows == 0) break;
+                done += pageRows;
+                postProgress(done, total);
+            }
+            zip.finish();
+            zip.flush();
+        } catch (IOException | SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Export failed: " + e.getMessage());
+            deleteTarget();
+            mainHandler.post(() -> listener.onFailed(e.getMessage()));
+            return;
+        }
+
+        boolean wasCancelled = cancelled.get();
+        // A cancelled export would leave a truncated archive behind
+        if (wasCancelled) deleteTarget();
+        mainHandler.post(() -> listener.onFinished(wasCancelled, rows));
+    }
+
+    private void postProgress(int done, int total) {
+        mainHandler.post(() -> listener.onProgress(done, total));
+    }
+
+    private void deleteTarget() {
+        try {
+            DocumentsContract.deleteDocument(context.getContentResolver(), target);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not delete partial export: " + e.getMessage());
+        }
+    }
+
+    static String imageName(int id) {
+        return id + ".png";
+    }
+
+    // Quotes a CSV field when it contains a separator, quote or line break
+    static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -1,7 +1,8 @@
 /*
  * Project: CassavaCare
  * File: HistoryFragment.java
- * Description: Fragment for displaying the history of scanned cassava leaves with navigation support.
+ * Description: Fragment for displaying the history of scanned cassava leaves with navigation support,
+ *              filterable by disease, minimum confidence and date range, with ZIP export and restore.
  *
  * Author: Emmanuel Kirui Barkacha
  * Email: ebarkacha@aimsammi.org
@@ -17,38 +18,77 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.core.util.Pair;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.navigation.NavController;
 import androidx.navigation.Navigation;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.room.Room;
 
 import com.ek.cassavacare.R;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
+import com.google.android.material.chip.Chip;
+import com.google.android.material.chip.ChipGroup;
+import com.google.android.material.datepicker.MaterialDatePicker;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
 
 public class HistoryFragment extends Fragment {
+    // Rows loaded per query; keeps filtering fast regardless of history size
+    private static final int PAGE_LIMIT = 500;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
     private AppDatabase db;
+    private HistoryAdapter adapter;
+    private LiveData<List<ScanSummary>> history;
+    private RecyclerView recyclerView;
+    private TextView tvEmpty;
+    private Chip chipDateRange;
+
+    private ActivityResultLauncher<String> exportLauncher;
+    private ActivityResultLauncher<String[]> restoreLauncher;
+    // Owns the export and restore jobs, which outlive this view
+    private ArchiveViewModel archive;
+    private Chip chipExport;
+    private Chip chipRestore;
+    private LinearLayout layoutArchive;
+    private TextView tvArchiveProgress;
+    private ProgressBar pbArchive;
+
+    // Current filter; null disease means all diseases
+    private String filterDisease;
+    private float filterMinConfidence;
+    private long filterFrom = 0;
+    private long filterTo = Long.MAX_VALUE;
 
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View root = inflater.inflate(R.layout.fragment_history, container, false);
 
-        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "database-name").build();
+        db = AppDatabase.getInstance(requireContext());
+        archive = new ViewModelProvider(requireActivity()).get(ArchiveViewModel.class);
 
-        RecyclerView recyclerView = root.findViewById(R.id.recycler_history);
+        recyclerView = root.findViewById(R.id.recycler_history);
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
+        adapter = new HistoryAdapter(db);
+        recyclerView.setAdapter(adapter);
+        tvEmpty = root.findViewById(R.id.tv_history_empty);
 
-        new Thread(() -> {
-            List<ScanResult> results = db.scanResultDao().getAll();
-            requireActivity().runOnUiThread(() -> {
-                HistoryAdapter adapter = new HistoryAdapter(results);
-                recyclerView.setAdapter(adapter);
-            });
-        }).start();
-
+        setupFilters(root);
+        setupArchiveActions(root);
+        loadHistory();
 
         BottomNavigationView bottomNav = requireActivity().findViewById(R.id.nav_view);
         NavController navController = Navigation.findNavController(requireActivity(), R.id.nav_host_fragment);
@@ -68,4 +108,129 @@ public class HistoryFragment extends Fragment {
 
         return root;
     }
-}
\ No newline at end of file
+
+    private void setupFilters(View root) {
+        // Disease chips: "All" plus one per model label
+        ChipGroup diseaseGroup = root.findViewById(R.id.chip_group_disease);
+        addDiseaseChip(diseaseGroup, "All", null, true);
+        for (String label : Classifier.LABELS) {
+            addDiseaseChip(diseaseGroup, label, label, false);
+        }
+        diseaseGroup.setOnCheckedStateChangeListener((group, checkedIds) -> {
+            if (checkedIds.isEmpty()) return;
+            Chip chip = group.findViewById(checkedIds.get(0));
+            filterDisease = (String) chip.getTag();
+            loadHistory();
+        });
+
+        ChipGroup confidenceGroup = root.findViewById(R.id.chip_group_confidence);
+        confidenceGroup.setOnCheckedStateChangeListener((group, checkedIds) -> {
+            if (checkedIds.isEmpty()) return;
+            int id = checkedIds.get(0);
+            if (id == R.id.chip_confidence_90) {
+                filterMinConfidence = 0.9f;
+            } else if (id == R.id.chip_confidence_80) {
+                filterMinConfidence = 0.8f;
+            } else {
+                filterMinConfidence = 0f;
+            }
+            loadHistory();
+        });
+
+        chipDateRange = root.findViewById(R.id.chip_date_range);
+        chipDateRange.setOnClickListener(v -> pickDateRange());
+        chipDateRange.setOnCloseIconClickListener(v -> {
+            filterFrom = 0;
+            filterTo = Long.MAX_VALUE;
+            chipDateRange.setText("Any date");
+            chipDateRange.setCloseIconVisible(false);
+            loadHistory();
+        });
+    }
+
+    private void setupArchiveActions(View root) {
+        chipExport = root.findViewById(R.id.chip_export);
+        chipRestore = root.findViewById(R.id.chip_restore);
+        layoutArchive = root.findViewById(R.id.layout_archive);
+        tvArchiveProgress = root.findViewById(R.id.tv_archive_progress);
+        pbArchive = root.findViewById(R.id.pb_archive);
+
+        exportLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/zip"), uri -> {
+            if (uri != null) archive.startExport(uri);
+        });
+        restoreLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) archive.startRestore(uri);
+        });
+        chipExport.setOnClickListener(v -> {
+            String date = new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
+            exportLauncher.launch("cassavacare-history-" + date + ".zip");
+        });
+        chipRestore.setOnClickListener(v -> restoreLauncher.launch(new String[]{"application/zip"}));
+        // The only place a running job is stopped from; leaving the screen lets it finish
+        root.findViewById(R.id.btn_archive_cancel).setOnClickListener(v -> archive.cancel());
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        archive.getProgress().observe(getViewLifecycleOwner(), this::showArchive);
+    }
+
+    private void showArchive(ArchiveViewModel.ArchiveProgress progress) {
+        if (progress == null || progress.finished) {
+            chipExport.setEnabled(true);
+            chipRestore.setEnabled(true);
+            layoutArchive.setVisibility(View.GONE);
+            // Only when the job has just ended, not each time the view is recreated
+            if (progress != null && progress.takeNotice()) {
+                Toast.makeText(requireContext(), progress.text, Toast.LENGTH_LONG).show();
+            }
+            return;
+        }
+        chipExport.setEnabled(false);
+        chipRestore.setEnabled(false);
+        layoutArchive.setVisibility(View.VISIBLE);
+        pbArchive.setMax(Math.max(progress.total, 1));
+        pbArchive.setProgress(progress.done);
+        tvArchiveProgress.setText(progress.text);
+    }
+
+    private void addDiseaseChip(ChipGroup group, String text, String disease, boolean checked) {
+        Chip chip = (Chip) getLayoutInflater().inflate(R.layout.item_filter_chip, group, false);
+        chip.setId(View.generateViewId());
+        chip.setText(text);
+        chip.setTag(disease);
+        group.addView(chip);
+        chip.setChecked(checked);
+    }
+
+    private void pickDateRange() {
+        MaterialDatePicker<Pair<Long, Long>> picker = MaterialDatePicker.Builder.dateRangePicker()
+                .setTitleText("Scan dates")
+                .build();
+        picker.addOnPositiveButtonClickListener(selection -> {
+            if (selection.first == null || selection.second == null) return;
+            // Picker returns UTC midnights; include the whole last day
+            filterFrom = selection.first;
+            filterTo = selection.second + DAY_MS - 1;
+            SimpleDateFormat format = new SimpleDateFormat("MMM d", Locale.getDefault());
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            chipDateRange.setText(format.format(new Date(filterFrom)) + " – " + format.format(new Date(selection.second)));
+            chipDateRange.setCloseIconVisible(true);
+            loadHistory();
+        });
+        picker.show(getChildFragmentManager(), "date_range");
+    }
+
+    // Swaps in the query for the current filter; it then refreshes itself whenever scans change
+    private void loadHistory() {
+        if (history != null) history.removeObservers(getViewLifecycleOwner());
+        history = filterDisease == null
+                ? db.scanResultDao().observeFilter(filterFrom, filterTo, filterMinConfidence, PAGE_LIMIT)
+                : db.scanResultDao().observeFilterByDisease(filterDisease, filterFrom, filterTo, filterMinConfidence, PAGE_LIMIT);
+        history.observe(getViewLifecycleOwner(), results -> {
+            adapter.submitList(results);
+            tvEmpty.setVisibility(results.isEmpty() ? View.VISIBLE : View.GONE);
+        });
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Project: CassavaCare
+ * File: HistoryImporter.java
+ * Description: Restores or merges a history ZIP written by HistoryExporter, streaming its entries
+ *              into the database in batched transactions and skipping scans that already exist.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class HistoryImporter {
+    private static final String TAG = "HistoryImporter";
+    // Scans per insert transaction; bounds how many images are held at once
+    private static final int BATCH_SIZE = 32;
+    private static final int HASH_PAGE = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Larger entries are not scan images; skipping them keeps memory bounded on hostile archives
+    private static final int MAX_IMAGE_BYTES = 16 * 1024 * 1024;
+
+    public interface Listener {
+        void onProgress(int done, int total);
+        void onFinished(boolean cancelled, int imported, int duplicates);
+        void onFailed(String message);
+    }
+
+    // One scans.csv row; only metadata, so even large archives index into a small map
+    private static class Row {
+        final long timestamp;
+        final String disease;
+        final float confidence;
+        final String result;
+        Double latitude;
+        Double longitude;
+
+        Row(long timestamp, String disease, float confidence, String result) {
+            this.timestamp = timestamp;
+            this.disease = disease;
+            this.confidence = confidence;
+            this.result = result;
+        }
+    }
+
+    private final Context context;
+    private final AppDatabase db;
+    private final Uri source;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    private final List<ScanResult> batch = new ArrayList<>();
+    private final Set<Long> seenHashes = new HashSet<>();
+    private int total;
+    private int done;
+    private int imported;
+    private int duplicates;
+
+    private HistoryImporter(Context context, Uri source, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.db = AppDatabase.getInstance(context);
+        this.source = source;
+        this.listener = listener;
+    }
+
+    /** Starts importing a document picked through ACTION_OPEN_DOCUMENT. */
+    public static HistoryImporter start(Context context, Uri source, Listener listener) {
+        HistoryImporter importer = new HistoryImporter(context, source, listener);
+        // Long-running, so it queues behind user-facing reads in the disk pool
+        TaskDispatcher.Task<Void> task = TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DISK_IO,
+                TaskDispatcher.Priority.BACKGROUND, importer::restore);
+        if (task.isCancelled()) importer.mainHandler.post(() -> listener.onFailed("Too much work queued, try again"));
+        return importer;
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    private void restore() {
+        try {
+            backfillHashes();
+            Map<String, Row> rowsByImage = null;
+            try (InputStream in = context.getContentResolver().openInputStream(source)) {
+                if (in == null) throw new IOException("Cannot open " + source);
+                ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+                ZipEntry entry;
+                while (!cancelled.get() && (entry = zip.getNextEntry()) != null) {
+                    String name = entry.getName();
+                    if (name.equals(HistoryExporter.CSV_ENTRY)) {
+                        rowsByImage = readCsv(zip);
+                    } else if (name.startsWith(HistoryExporter.IMAGE_DIR)) {
+                        if (rowsByImage == null) throw new IOException("Archive lists images before scans.csv");
+                        Row row = rowsByImage.remove(name.substring(HistoryExporter.IMAGE_DIR.length()));
+                        if (row == null) continue; // Image without a metadata row
+                        byte[] image = readEntry(zip);
+                        if (image == null) {
+                            Log.w(TAG, "Skipping oversized entry " + name);
+                            total--;
+                            continue;
+                        }
+                        add(row, image);
+                    }
+                }
+            }
+            if (rowsByImage == null) throw new IOException("Not a CassavaCare export: scans.csv is missing");
+            // Rows whose image entry was missing are still worth keeping
+            if (!cancelled.get()) {
+                for (Row row : rowsByImage.values()) add(row, null);
+            }
+            flushBatch();
+        } catch (IOException | SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Import failed: " + e.getMessage());
+            mainHandler.post(() -> listener.onFailed(e.getMessage()));
+            return;
+        } finally {
+            // Batches already inserted before a failure or cancel must reach the rollups too
+            if (imported > 0) rebuildAggregates();
+        }
+
+        boolean wasCancelled = cancelled.get();
+        int importedTotal = imported;
+        int duplicateTotal = duplicates;
+        mainHandler.post(() -> listener.onFinished(wasCancelled, importedTotal, duplicateTotal));
+    }
+
+    // Rows saved before content hashes existed get one, a few at a time since it needs the image
+    private void backfillHashes() {
+        ScanResultDao dao = db.scanResultDao();
+        List<Integer> ids = new ArrayList<>();
+        List<Long> hashes = new ArrayList<>();
+        while (!cancelled.get()) {
+            ids.clear();
+            hashes.clear();
+            try (Cursor cursor = dao.unhashedPage(HASH_PAGE)) {
+                while (cursor.moveToNext()) {
+                    byte[] image = cursor.isNull(3) ? null : cursor.getBlob(3);
+                    ids.add(cursor.getInt(0));
+                    hashes.add(ScanResult.contentHash(image, cursor.getString(1), cursor.getLong(2)));
+                }
+            }
+            if (ids.isEmpty()) return;
+            db.runInTransaction(() -> {
+                for (int i = 0; i < ids.size(); i++) dao.setContentHash(ids.get(i), hashes.get(i));
+            });
+        }
+    }
+
+    // Reads scans.csv; image-less rows are queued at once, the rest wait for their image entry
+    private Map<String, Row> readCsv(InputStream zip) throws IOException {
+        // Not closed: closing the reader would close the whole archive
+        BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+        List<String> header = readRecord(reader);
+        if (header == null) throw new IOException("scans.csv is empty");
+        int timestampColumn = header.indexOf("timestamp");
+        int diseaseColumn = header.indexOf("disease");
+        int confidenceColumn = header.indexOf("confidence");
+        int resultColumn = header.indexOf("result");
+        int imageColumn = header.indexOf("image");
+        // Location columns are absent from archives exported before geotagging
+        int latitudeColumn = header.indexOf("latitude");
+        int longitudeColumn = header.indexOf("longitude");
+        if (timestampColumn < 0 || resultColumn < 0) throw new IOException("scans.csv has no timestamp or result column");
+
+        Map<String, Row> rowsByImage = new HashMap<>();
+        List<Row> withoutImage = new ArrayList<>();
+        List<String> record;
+        while ((record = readRecord(reader)) != null && !cancelled.get()) {
+            if (record.size() < header.size()) continue;
+            try {
+                String disease = diseaseColumn >= 0 ? record.get(diseaseColumn) : "";
+                Row row = new Row(Long.parseLong(record.get(timestampColumn)),
+                        disease.isEmpty() ? null : disease,
+                        confidenceColumn >= 0 ? Float.parseFloat(record.get(confidenceColumn)) : 0f,
+                        record.get(resultColumn));
+                if (latitudeColumn >= 0 && longitudeColumn >= 0
+                        && !record.get(latitudeColumn).isEmpty() && !record.get(longitudeColumn).isEmpty()) {
+                    row.latitude = Double.parseDouble(record.get(latitudeColumn));
+                    row.longitude = Double.parseDouble(record.get(longitudeColumn));
+                }
+                String image = imageColumn >= 0 ? record.get(imageColumn) : "";
+                if (image.isEmpty()) {
+                    withoutImage.add(row);
+                } else {
+                    rowsByImage.put(image, row);
+                }
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Skipping malformed row: " + e.getMessage());
+            }
+        }
+        total = rowsByImage.size() + withoutImage.size();
+        for (Row row : withoutImage) add(row, null);
+        return rowsByImage;
+    }
+
+    private void add(Row row, byte[] image) {
+        long hash = ScanResult.contentHash(image, row.result, row.timestamp);
+        done++;
+        if (!seenHashes.add(hash)) {
+            duplicates++;
+        } else {
+            ScanResult scan = new ScanResult(row.result, row.timestamp, image);
+            scan.disease = row.disease;
+            scan.confidence = row.confidence;
+            scan.contentHash = hash;
+            if (row.latitude != null) scan.setLocation(row.latitude, row.longitude);
+            batch.add(scan);
+            if (batch.size() >= BATCH_SIZE) flushBatch();
+        }
+        if (done % BATCH_SIZE == 0) postProgress();
+    }
+
+    // One lookup and one transaction per batch, instead of per row
+    private void flushBatch() {
+        if (batch.isEmpty()) return;
+        ScanResultDao dao = db.scanResultDao();
+        List<Long> hashes = new ArrayList<>(batch.size());
+        for (ScanResult scan : batch) hashes.add(scan.contentHash);
+        Set<Long> existing = new HashSet<>(dao.existingHashes(hashes));
+
+        List<ScanResult> fresh = new ArrayList<>(batch.size());
+        for (ScanResult scan : batch) {
+            if (existing.contains(scan.contentHash)) {
+                duplicates++;
+                continue;
+            }
+            // Thumbnails only for scans actually inserted
+            if (scan.image != null) scan.thumbnail = ScanResult.thumbnailFromImage(scan.image);
+            fresh.add(scan);
+        }
+        dao.insertAll(fresh);
+        imported += fresh.size();
+        batch.clear();
+        postProgress();
+    }
+
+    // Derived data is refreshed once per import, not once per inserted row
+    private void rebuildAggregates() {
+        db.scanResultDao().rebuildRollups();
+        db.getOpenHelper().getWritableDatabase().execSQL("ANALYZE `scan_results`");
+    }
+
+    private void postProgress() {
+        int doneSoFar = done;
+        int totalSoFar = total;
+        mainHandler.post(() -> listener.onProgress(doneSoFar, totalSoFar));
+    }
+
+    // Null when the entry is larger than MAX_IMAGE_BYTES
+    private static byte[] readEntry(InputStream zip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = zip.read(buffer)) > 0) {
+            if (out.size() + n > MAX_IMAGE_BYTES) return null;
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    // One CSV record, honouring quoted fields with commas, quotes and line breaks; null at the end
+    static List<String> readRecord(BufferedReader in) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean read = false;
+        int c;
+        while ((c = in.read()) != -1) {
+            read = true;
+            if (quoted) {
+                if (c == '"') {
+                    in.mark(1);
+                    int next = in.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) in.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!read) return null;
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -2,7 +2,7 @@
  * Project: CassavaCare
  * File: HomeFragment.java
  * Description: Fragment displaying the home screen with recent scan results, statistics, farming tips,
- *              and a bar chart summarizing scan data.
+ *              a bar chart summarizing scan data, a line chart of disease trends and a field heatmap.
  *
  * Author: Emmanuel Kirui Barkacha
  * Email: ebarkacha@aimsammi.org
@@ -17,7 +17,6 @@ package com.ek.cassavacare;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -27,11 +26,12 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.navigation.Navigation;
-import androidx.room.Room;
 
 import com.ek.cassavacare.R;
 import com.github.mikephil.charting.charts.BarChart;
+import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.Legend;
 import com.github.mikephil.charting.components.LegendEntry;
 import com.github.mikephil.charting.components.XAxis;
@@ -39,31 +39,31 @@ import com.github.mikephil.charting.components.YAxis;
 import com.github.mikephil.charting.data.BarData;
 import com.github.mikephil.charting.data.BarDataSet;
 import com.github.mikephil.charting.data.BarEntry;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
+import com.github.mikephil.charting.formatter.ValueFormatter;
 import com.github.mikephil.charting.utils.ColorTemplate;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.TimeZone;
 
 public class HomeFragment extends Fragment {
     private static final String TAG = "HomeFragment";
-    private AppDatabase db;
-    private ExecutorService executorService;
+    private DashboardViewModel viewModel;
     private TextView tvRecentScanResult, tvRecentScanDate, tvStatsTotal, tvStatsCommonDisease;
     private BarChart chartScanStats;
-
-    private static final String[] FARMING_TIPS = {
-            "Rotate crops every 2-3 years to prevent disease buildup.",
-            "Use disease-resistant cassava varieties for better yield.",
-            "Monitor plants regularly with CassavaCare scans.",
-            "Apply organic fertilizers to boost plant health.",
-            "Control whitefly vectors to prevent Cassava Mosaic Disease."
-    };
+    private LineChart chartDiseaseTrend;
+    private TextView tvTrendsEmpty;
+    private HeatmapView heatmapView;
+    private TextView tvHeatmapEmpty;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -74,10 +74,13 @@ public class HomeFragment extends Fragment {
         tvStatsTotal = root.findViewById(R.id.tv_stats_total);
         tvStatsCommonDisease = root.findViewById(R.id.tv_stats_common_disease);
         chartScanStats = root.findViewById(R.id.chart_scan_stats);
+        chartDiseaseTrend = root.findViewById(R.id.chart_disease_trend);
+        tvTrendsEmpty = root.findViewById(R.id.tv_trends_empty);
+        heatmapView = root.findViewById(R.id.heatmap_view);
+        tvHeatmapEmpty = root.findViewById(R.id.tv_heatmap_empty);
 
-        // Initialize database and executor
-        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "database-name").build();
-        executorService = Executors.newSingleThreadExecutor();
+        // Shared with the activity, so the dashboard is not recomputed on every visit to Home
+        viewModel = new ViewModelProvider(requireActivity()).get(DashboardViewModel.class);
 
         // Setup buttons
         Button btnScanNow = root.findViewById(R.id.btn_quick_scan);
@@ -91,205 +94,234 @@ public class HomeFragment extends Fragment {
             Navigation.findNavController(v).navigate(R.id.action_home_to_history);
         });
 
-        // Load recent scan and statistics
-        loadRecentScan();
-        loadScanStatistics();
-
         // Basic chart setup
         chartScanStats.getDescription().setEnabled(false);
         chartScanStats.setFitBars(true);
         chartScanStats.getLegend().setEnabled(true);
 
-        // Set random farming tip
+        // Recent scan and statistics update themselves whenever a scan is saved
+        viewModel.getRecentScan().observe(getViewLifecycleOwner(), this::showRecentScan);
+        viewModel.getStats().observe(getViewLifecycleOwner(), this::showScanStatistics);
+        viewModel.getTrends().observe(getViewLifecycleOwner(), this::showDiseaseTrends);
+        viewModel.getHeatmap().observe(getViewLifecycleOwner(), grid -> {
+            heatmapView.setGrid(grid);
+            heatmapView.setVisibility(grid != null ? View.VISIBLE : View.GONE);
+            tvHeatmapEmpty.setVisibility(grid != null ? View.GONE : View.VISIBLE);
+        });
+
+        // Farming tip is picked once per session
         TextView tvTipContent = root.findViewById(R.id.tv_tip_content);
-        tvTipContent.setText(FARMING_TIPS[new Random().nextInt(FARMING_TIPS.length)]);
+        tvTipContent.setText(viewModel.getFarmingTip());
 
         return root;
     }
 
-    private void loadRecentScan() {
-        executorService.execute(() -> {
-            List<ScanResult> allScans = db.scanResultDao().getAll();
-            requireActivity().runOnUiThread(() -> {
-                if (allScans != null && !allScans.isEmpty()) {
-                    ScanResult recentScan = allScans.get(0); // First item due to DESC order
-                    tvRecentScanResult.setText(recentScan.result);
-                    tvRecentScanDate.setText(android.text.format.DateFormat.format("yyyy-MM-dd HH:mm", recentScan.timestamp));
-                } else {
-                    tvRecentScanResult.setText("No recent scans");
-                    tvRecentScanDate.setText("");
-                }
-            });
-        });
+    private void showRecentScan(ScanSummary recentScan) {
+        if (recentScan != null) {
+            tvRecentScanResult.setText(recentScan.result);
+            tvRecentScanDate.setText(android.text.format.DateFormat.format("yyyy-MM-dd HH:mm", recentScan.timestamp));
+        } else {
+            tvRecentScanResult.setText("No recent scans");
+            tvRecentScanDate.setText("");
+        }
     }
 
-    private void loadScanStatistics() {
-        executorService.execute(() -> {
-            try {
-                // Fetch all scan results (ordered by timestamp DESC)
-                List<ScanResult> scanResults = db.scanResultDao().getAll();
-                if (scanResults.isEmpty()){
-                    requireActivity().runOnUiThread(() -> {
-                        tvStatsTotal.setText("Total Scans: 0");
-                        tvStatsCommonDisease.setText("Most Common Disease: None");
-                        chartScanStats.clear();
-                        chartScanStats.setVisibility(View.GONE);
-                    });
-                }else {
-                    Map<String, Integer> diseaseCounts = new HashMap<>();
-                    String mostCommonDisease = "None";
-                    int maxCount = 0;
-                    int totalScans = 0;
-
-                    for (ScanResult result : scanResults) {
-                        String disease = result.result.split(" - ")[0]; // Extract disease name
-                        diseaseCounts.put(disease, diseaseCounts.getOrDefault(disease, 0) + 1);
-                        totalScans++;
-                        if (diseaseCounts.get(disease) > maxCount) {
-                            maxCount = diseaseCounts.get(disease);
-                            mostCommonDisease = disease;
-                        }
-                    }
+    private void showScanStatistics(DashboardViewModel.Stats stats) {
+        if (stats.total == 0) {
+            tvStatsTotal.setText("Total Scans: 0");
+            tvStatsCommonDisease.setText("Most Common Disease: None");
+            chartScanStats.clear();
+            chartScanStats.setVisibility(View.GONE);
+            return;
+        }
 
-                    // Prepare chart data with shortened labels and fixed green shades
-                    List<BarEntry> entries = new ArrayList<>();
-                    List<String> labels = new ArrayList<>();
-                    List<Integer> colors = new ArrayList<>();
-
-                    int index = 0;
-
-                    // Fixed shades of green for 5 classes
-                    int[] greenShades = {
-//                            Color.parseColor("#004D40"), // very dark green
-//                            Color.parseColor("#1B5E20"), // dark green
-//                            Color.parseColor("#4CAF50"), // medium green
-//                            Color.parseColor("#8BC34A"), // bright lime green
-//                            Color.parseColor("#A5D6A7")  // pastel mint green
-                            Color.parseColor("#1B5E20"),
-                            Color.parseColor("#2E7D32"),
-                            Color.parseColor("#43A047"),
-                            Color.parseColor("#66BB6A"),
-                            Color.parseColor("#A5D6A7")
-                    };
-
-                    for (Map.Entry<String, Integer> entry : diseaseCounts.entrySet()) {
-                        entries.add(new BarEntry(index, entry.getValue()));
-                        String shortLabel = shortenDiseaseName(entry.getKey());
-                        labels.add(shortLabel);
-                        colors.add(greenShades[index % greenShades.length]); // Assign unique green per disease
-                        index++;
-                    }
+        // Prepare chart data with shortened labels and fixed green shades
+        List<BarEntry> entries = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        List<Integer> colors = new ArrayList<>();
+
+        int index = 0;
+
+        // Fixed shades of green for 5 classes
+        int[] greenShades = {
+                Color.parseColor("#1B5E20"),
+                Color.parseColor("#2E7D32"),
+                Color.parseColor("#43A047"),
+                Color.parseColor("#66BB6A"),
+                Color.parseColor("#A5D6A7")
+        };
+
+        for (DiseaseCount count : stats.counts) {
+            entries.add(new BarEntry(index, count.count));
+            labels.add(shortenDiseaseName(count.disease));
+            colors.add(greenShades[index % greenShades.length]); // Assign unique green per disease
+            index++;
+        }
 
-                    int textColor = ContextCompat.getColor(requireContext(), R.color.text_primary);
-                    BarDataSet dataSet = new BarDataSet(entries, "Scan Count");
-                    dataSet.setColors(colors); // Apply custom green shades
-                    dataSet.setValueTextColor(textColor);
-                    dataSet.setValueTextSize(12f);
-
-                    BarData barData = new BarData(dataSet);
-                    barData.setBarWidth(0.9f);
-
-                    int finalTotalScans = totalScans;
-                    String finalMostCommonDisease = mostCommonDisease;
-                    requireActivity().runOnUiThread(() -> {
-                        tvStatsTotal.setText("Total Scans: " + finalTotalScans);
-                        tvStatsCommonDisease.setText("Most Common Disease: " + finalMostCommonDisease);
-                        chartScanStats.setData(barData);
-                        chartScanStats.setFitBars(true);
-
-                        chartScanStats.getXAxis().setValueFormatter(new IndexAxisValueFormatter(labels));
-                        chartScanStats.getXAxis().setPosition(XAxis.XAxisPosition.BOTTOM);
-                        chartScanStats.getXAxis().setGranularity(1f); // One label per bar
-                        chartScanStats.getXAxis().setLabelCount(labels.size()); // Match label count
-                        chartScanStats.getAxisLeft().setAxisMinimum(0f);
-
-                        // Optional: Rotate labels if overlapping
-                        if (labels.size() > 4) {
-                            chartScanStats.getXAxis().setLabelRotationAngle(-45f);
-                        }
+        int textColor = ContextCompat.getColor(requireContext(), R.color.text_primary);
+        BarDataSet dataSet = new BarDataSet(entries, "Scan Count");
+        dataSet.setColors(colors); // Apply custom green shades
+        dataSet.setValueTextColor(textColor);
+        dataSet.setValueTextSize(12f);
 
-                        chartScanStats.getAxisRight().setEnabled(false);
-
-                        // Get X-axis and Y-axis
-                        XAxis xAxis = chartScanStats.getXAxis();
-                        YAxis leftAxis = chartScanStats.getAxisLeft();
-                        YAxis rightAxis = chartScanStats.getAxisRight();
-
-                        xAxis.setTextColor(textColor);
-                        leftAxis.setTextColor(textColor);
-
-                        // Disable grid lines
-                        xAxis.setDrawGridLines(false);
-                        leftAxis.setDrawGridLines(true);
-                        rightAxis.setDrawGridLines(false);
-
-                        // Axis lines
-                        xAxis.setDrawAxisLine(true);
-                        leftAxis.setDrawAxisLine(true);
-                        rightAxis.setDrawAxisLine(false);
-
-                        // Legend setup
-                        Legend legend = chartScanStats.getLegend();
-                        legend.setEnabled(true);
-                        legend.setVerticalAlignment(Legend.LegendVerticalAlignment.BOTTOM);
-                        legend.setHorizontalAlignment(Legend.LegendHorizontalAlignment.CENTER);
-                        legend.setOrientation(Legend.LegendOrientation.HORIZONTAL);
-                        legend.setTextColor(textColor);
-                        legend.setDrawInside(false);
-                        legend.setWordWrapEnabled(true);
-                        legend.setTextSize(10f);
-                        legend.setXEntrySpace(10f);
-                        legend.setYEntrySpace(5f);
-
-                        // Custom legend entries matching labels and colors
-                        List<LegendEntry> legendEntries = new ArrayList<>();
-                        for (int i = 0; i < labels.size(); i++) {
-                            LegendEntry legendEntry = new LegendEntry();
-                            legendEntry.label = labels.get(i);
-                            legendEntry.formColor = colors.get(i);
-                            legendEntry.form = Legend.LegendForm.SQUARE;
-                            legendEntries.add(legendEntry);
-                        }
-                        legend.setCustom(legendEntries);
-
-                        chartScanStats.setExtraBottomOffset(20f);
-
-                    chartScanStats.getViewTreeObserver().addOnGlobalLayoutListener(
-                                new ViewTreeObserver.OnGlobalLayoutListener() {
-                                    @Override
-                                    public void onGlobalLayout() {
-                                        // re-apply to compute with final width
-                                        Legend lg = chartScanStats.getLegend();
-                                        lg.setWordWrapEnabled(true);
-                                        lg.setCustom(legendEntries);
-                                        chartScanStats.notifyDataSetChanged();
-                                        chartScanStats.invalidate();
-
-                                        // remove listener
-                                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                                            chartScanStats.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                                        } else {
-                                            chartScanStats.getViewTreeObserver().removeGlobalOnLayoutListener(this);
-                                        }
-                                    }
-                                }
-                        );
+        BarData barData = new BarData(dataSet);
+        barData.setBarWidth(0.9f);
 
+        tvStatsTotal.setText("Total Scans: " + stats.total);
+        tvStatsCommonDisease.setText("Most Common Disease: " + stats.mostCommonDisease);
+        chartScanStats.setData(barData);
+        chartScanStats.setFitBars(true);
+
+        chartScanStats.getXAxis().setValueFormatter(new IndexAxisValueFormatter(labels));
+        chartScanStats.getXAxis().setPosition(XAxis.XAxisPosition.BOTTOM);
+        chartScanStats.getXAxis().setGranularity(1f); // One label per bar
+        chartScanStats.getXAxis().setLabelCount(labels.size()); // Match label count
+        chartScanStats.getAxisLeft().setAxisMinimum(0f);
+
+        // Optional: Rotate labels if overlapping
+        if (labels.size() > 4) {
+            chartScanStats.getXAxis().setLabelRotationAngle(-45f);
+        }
+
+        chartScanStats.getAxisRight().setEnabled(false);
+
+        // Get X-axis and Y-axis
+        XAxis xAxis = chartScanStats.getXAxis();
+        YAxis leftAxis = chartScanStats.getAxisLeft();
+        YAxis rightAxis = chartScanStats.getAxisRight();
+
+        xAxis.setTextColor(textColor);
+        leftAxis.setTextColor(textColor);
+
+        // Disable grid lines
+        xAxis.setDrawGridLines(false);
+        leftAxis.setDrawGridLines(true);
+        rightAxis.setDrawGridLines(false);
+
+        // Axis lines
+        xAxis.setDrawAxisLine(true);
+        leftAxis.setDrawAxisLine(true);
+        rightAxis.setDrawAxisLine(false);
+
+        // Legend setup
+        Legend legend = chartScanStats.getLegend();
+        legend.setEnabled(true);
+        legend.setVerticalAlignment(Legend.LegendVerticalAlignment.BOTTOM);
+        legend.setHorizontalAlignment(Legend.LegendHorizontalAlignment.CENTER);
+        legend.setOrientation(Legend.LegendOrientation.HORIZONTAL);
+        legend.setTextColor(textColor);
+        legend.setDrawInside(false);
+        legend.setWordWrapEnabled(true);
+        legend.setTextSize(10f);
+        legend.setXEntrySpace(10f);
+        legend.setYEntrySpace(5f);
+
+        // Custom legend entries matching labels and colors
+        List<LegendEntry> legendEntries = new ArrayList<>();
+        for (int i = 0; i < labels.size(); i++) {
+            LegendEntry legendEntry = new LegendEntry();
+            legendEntry.label = labels.get(i);
+            legendEntry.formColor = colors.get(i);
+            legendEntry.form = Legend.LegendForm.SQUARE;
+            legendEntries.add(legendEntry);
+        }
+        legend.setCustom(legendEntries);
+
+        chartScanStats.setExtraBottomOffset(20f);
+
+        chartScanStats.getViewTreeObserver().addOnGlobalLayoutListener(
+                new ViewTreeObserver.OnGlobalLayoutListener() {
+                    @Override
+                    public void onGlobalLayout() {
+                        // re-apply to compute with final width
+                        Legend lg = chartScanStats.getLegend();
+                        lg.setWordWrapEnabled(true);
+                        lg.setCustom(legendEntries);
+                        chartScanStats.notifyDataSetChanged();
                         chartScanStats.invalidate();
-                        chartScanStats.setVisibility(View.VISIBLE);
 
-                    });
+                        // remove listener
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                            chartScanStats.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                        } else {
+                            chartScanStats.getViewTreeObserver().removeGlobalOnLayoutListener(this);
+                        }
+                    }
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to load scan statistics: " + e.getMessage());
-                requireActivity().runOnUiThread(() -> {
-                    tvStatsTotal.setText("Total Scans: 0");
-                    tvStatsCommonDisease.setText("Most Common Disease: None");
-                    chartScanStats.clear();
-                    chartScanStats.setVisibility(View.GONE);
-                });
+        );
+
+        chartScanStats.invalidate();
+        chartScanStats.setVisibility(View.VISIBLE);
+    }
+
+    private void showDiseaseTrends(Map<String, List<Entry>> trends) {
+        // A trend needs at least two weeks of scans
+        boolean hasTrend = false;
+        for (List<Entry> points : trends.values()) {
+            if (points.size() > 1) hasTrend = true;
+        }
+        if (!hasTrend) {
+            chartDiseaseTrend.clear();
+            chartDiseaseTrend.setVisibility(View.GONE);
+            tvTrendsEmpty.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        int[] lineColors = {
+                Color.parseColor("#1B5E20"),
+                Color.parseColor("#F9A825"),
+                Color.parseColor("#6D4C41"),
+                Color.parseColor("#C62828")
+        };
+        int textColor = ContextCompat.getColor(requireContext(), R.color.text_primary);
+
+        LineData lineData = new LineData();
+        int index = 0;
+        for (Map.Entry<String, List<Entry>> trend : trends.entrySet()) {
+            LineDataSet dataSet = new LineDataSet(trend.getValue(), shortenDiseaseName(trend.getKey()));
+            int color = lineColors[index % lineColors.length];
+            dataSet.setColor(color);
+            dataSet.setCircleColor(color);
+            dataSet.setLineWidth(2f);
+            dataSet.setDrawCircles(trend.getValue().size() < 20);
+            dataSet.setCircleRadius(2.5f);
+            dataSet.setDrawValues(false);
+            lineData.addDataSet(dataSet);
+            index++;
+        }
+
+        chartDiseaseTrend.setData(lineData);
+        chartDiseaseTrend.getDescription().setEnabled(false);
+        chartDiseaseTrend.getAxisRight().setEnabled(false);
+
+        XAxis xAxis = chartDiseaseTrend.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setTextColor(textColor);
+        xAxis.setDrawGridLines(false);
+        xAxis.setLabelCount(4);
+        // x is days since the epoch; label by month
+        SimpleDateFormat monthFormat = new SimpleDateFormat("MMM yy", Locale.getDefault());
+        monthFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        xAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return monthFormat.format(new Date((long) value * ScanRollup.DAY_MS));
             }
         });
+
+        YAxis leftAxis = chartDiseaseTrend.getAxisLeft();
+        leftAxis.setAxisMinimum(0f);
+        leftAxis.setAxisMaximum(100f);
+        leftAxis.setTextColor(textColor);
+
+        Legend legend = chartDiseaseTrend.getLegend();
+        legend.setTextColor(textColor);
+        legend.setWordWrapEnabled(true);
+        legend.setHorizontalAlignment(Legend.LegendHorizontalAlignment.CENTER);
+
+        chartDiseaseTrend.invalidate();
+        chartDiseaseTrend.setVisibility(View.VISIBLE);
+        tvTrendsEmpty.setVisibility(View.GONE);
     }
 
     // Method to shorten disease names
@@ -319,10 +351,4 @@ public class HomeFragment extends Fragment {
         }
         return abbreviated.length() > 0 ? abbreviated.toString() : fullName.substring(0, Math.min(3, fullName.length()));
     }
-    @Override
-    public void onDestroyView() {
-        super.onDestroyView();
-        if (executorService != null) executorService.shutdown();
-        if (db != null) db.close();
-    }
 }
\ No newline at end of file
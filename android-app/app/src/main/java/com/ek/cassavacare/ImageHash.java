@@ -0,0 +1,67 @@
+/*
+ * Project: CassavaCare
+ * File: ImageHash.java
+ * Description: 64-bit difference hash (dHash) of an image, used to recognise photos that were
+ *              already classified even after re-compression or resizing.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.graphics.Bitmap;
+
+public class ImageHash {
+    private static final int HASH_WIDTH = 9;  // 9 columns give 8 left/right comparisons per row
+    private static final int HASH_HEIGHT = 8;
+    private static final int BLOCK = 8;       // Each hash cell averages an 8x8 block of the thumbnail
+
+    public static final int BANDS = 4;
+    public static final int BAND_BITS = 16;
+
+    public static long dHash(Bitmap bitmap) {
+        int width = HASH_WIDTH * BLOCK;
+        int height = HASH_HEIGHT * BLOCK;
+        Bitmap small = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        int[] pixels = new int[width * height];
+        small.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (small != bitmap) small.recycle();
+
+        // Box-average the thumbnail into a 9x8 grey grid
+        int[] grid = new int[HASH_WIDTH * HASH_HEIGHT];
+        for (int y = 0; y < height; y++) {
+            int cellRow = (y / BLOCK) * HASH_WIDTH;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[y * width + x];
+                int luma = (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+                grid[cellRow + x / BLOCK] += luma;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                hash <<= 1;
+                if (grid[y * HASH_WIDTH + x] < grid[y * HASH_WIDTH + x + 1]) hash |= 1;
+            }
+        }
+        return hash;
+    }
+
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * One of the four 16-bit slices of the hash. Two hashes within Hamming distance 3 always share
+     * at least one band exactly, which lets the cache find near-duplicates with indexed lookups.
+     */
+    public static int band(long hash, int index) {
+        return (int) ((hash >>> (index * BAND_BITS)) & 0xFFFF);
+    }
+}
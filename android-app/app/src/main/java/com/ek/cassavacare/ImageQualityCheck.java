@@ -0,0 +1,150 @@
+/*
+ * Project: CassavaCare
+ * File: ImageQualityCheck.java
+ * Description: Fast pre-inference check that rejects blurry, badly exposed or leafless photos
+ *              from a downsampled copy before the model is run.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.graphics.Bitmap;
+
+public class ImageQualityCheck {
+    public enum Rejection {
+        NONE(null),
+        TOO_DARK("The photo is too dark. Move to better light and try again."),
+        TOO_BRIGHT("The photo is overexposed. Avoid direct glare on the leaf and try again."),
+        NO_LEAF("No cassava leaf was found in the photo. Fill the frame with a single leaf and try again."),
+        TOO_BLURRY("The photo is blurry. Hold the phone steady, tap to focus on the leaf and try again.");
+
+        public final String message;
+
+        Rejection(String message) {
+            this.message = message;
+        }
+    }
+
+    public static class Report {
+        public final Rejection rejection;
+        public final float blurVariance;
+        public final float meanLuma;
+        public final float darkFraction;
+        public final float brightFraction;
+        public final float greenRatio;
+
+        Report(Rejection rejection, float blurVariance, float meanLuma,
+               float darkFraction, float brightFraction, float greenRatio) {
+            this.rejection = rejection;
+            this.blurVariance = blurVariance;
+            this.meanLuma = meanLuma;
+            this.darkFraction = darkFraction;
+            this.brightFraction = brightFraction;
+            this.greenRatio = greenRatio;
+        }
+
+        public boolean isAcceptable() {
+            return rejection == Rejection.NONE;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (blur=%.1f, luma=%.1f, dark=%.2f, bright=%.2f, green=%.2f)",
+                    rejection, blurVariance, meanLuma, darkFraction, brightFraction, greenRatio);
+        }
+    }
+
+    // Longest side of the analysed copy; thresholds below are tuned for this size
+    private static final int SAMPLE_SIZE = 128;
+    private static final int DARK_LUMA = 40;
+    private static final int BRIGHT_LUMA = 235;
+    private static final float MAX_DARK_FRACTION = 0.6f;
+    private static final float MAX_BRIGHT_FRACTION = 0.5f;
+    private static final float MIN_MEAN_LUMA = 35f;
+    private static final float MIN_GREEN_RATIO = 0.05f;
+    private static final int MIN_EXCESS_GREEN = 12;
+    private static final float MIN_BLUR_VARIANCE = 40f;
+
+    public static Report check(Bitmap bitmap) {
+        float scale = SAMPLE_SIZE / (float) Math.max(bitmap.getWidth(), bitmap.getHeight());
+        Bitmap sample = scale < 1f
+                ? Bitmap.createScaledBitmap(bitmap, Math.max(3, Math.round(bitmap.getWidth() * scale)),
+                        Math.max(3, Math.round(bitmap.getHeight() * scale)), true)
+                : bitmap;
+        int width = sample.getWidth();
+        int height = sample.getHeight();
+        int[] pixels = new int[width * height];
+        sample.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (sample != bitmap) sample.recycle();
+
+        // Luma of the last three rows, so the Laplacian of row y-1 is computed while reading row y
+        int[][] rows = new int[3][width];
+        int[] histogram = new int[256];
+        long lumaSum = 0;
+        int greenPixels = 0;
+        double lapSum = 0;
+        double lapSumSq = 0;
+        int lapCount = 0;
+
+        for (int y = 0; y < height; y++) {
+            int[] row = rows[y % 3];
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[offset + x];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                int luma = (77 * r + 150 * g + 29 * b) >> 8;
+                row[x] = luma;
+                histogram[luma]++;
+                lumaSum += luma;
+                if (2 * g - r - b > MIN_EXCESS_GREEN && luma > DARK_LUMA / 2) greenPixels++;
+            }
+            if (y >= 2) {
+                int[] up = rows[(y - 2) % 3];
+                int[] mid = rows[(y - 1) % 3];
+                for (int x = 1; x < width - 1; x++) {
+                    int lap = 4 * mid[x] - mid[x - 1] - mid[x + 1] - up[x] - row[x];
+                    lapSum += lap;
+                    lapSumSq += (double) lap * lap;
+                    lapCount++;
+                }
+            }
+        }
+
+        int total = pixels.length;
+        int dark = 0;
+        for (int i = 0; i < DARK_LUMA; i++) dark += histogram[i];
+        int bright = 0;
+        for (int i = BRIGHT_LUMA; i < 256; i++) bright += histogram[i];
+
+        float meanLuma = lumaSum / (float) total;
+        float darkFraction = dark / (float) total;
+        float brightFraction = bright / (float) total;
+        float greenRatio = greenPixels / (float) total;
+        float blurVariance = 0f;
+        if (lapCount > 0) {
+            double mean = lapSum / lapCount;
+            blurVariance = (float) (lapSumSq / lapCount - mean * mean);
+        }
+
+        // Exposure first: dark frames also look blurry and colourless
+        Rejection rejection = Rejection.NONE;
+        if (meanLuma < MIN_MEAN_LUMA || darkFraction > MAX_DARK_FRACTION) {
+            rejection = Rejection.TOO_DARK;
+        } else if (brightFraction > MAX_BRIGHT_FRACTION) {
+            rejection = Rejection.TOO_BRIGHT;
+        } else if (greenRatio < MIN_GREEN_RATIO) {
+            rejection = Rejection.NO_LEAF;
+        } else if (blurVariance < MIN_BLUR_VARIANCE) {
+            rejection = Rejection.TOO_BLURRY;
+        }
+        return new Report(rejection, blurVariance, meanLuma, darkFraction, brightFraction, greenRatio);
+    }
+}
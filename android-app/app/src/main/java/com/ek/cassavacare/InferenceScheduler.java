@@ -0,0 +1,200 @@
+/*
+ * Project: CassavaCare
+ * File: InferenceScheduler.java
+ * Description: Picks how much work each scan may cost from the device's thermal status and battery
+ *              saver. Hot or power-saving phones get fewer interpreter threads, a smaller model and
+ *              no extra passes; the full policy comes back once conditions have recovered.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import java.util.Locale;
+
+public class InferenceScheduler {
+    private static final String TAG = "InferenceScheduler";
+    private static volatile InferenceScheduler instance;
+    // Conditions must stay better this long before stepping up, so a phone hovering at a thermal
+    // boundary does not reload the model back and forth
+    private static final long RECOVERY_DELAY_MS = 60_000;
+
+    public enum Policy {
+        // Ordered from most to least work per scan
+        FULL(4, ModelTier.ACCURATE, true, 4),
+        REDUCED(2, ModelTier.BALANCED, false, 2),
+        MINIMAL(1, ModelTier.FAST, false, 1);
+
+        public final int threads;
+        public final ModelTier maxTier;
+        // Tiled analysis and per-leaf classification
+        public final boolean extraPasses;
+        // Survey shots in flight at once, which bounds the shutter rate
+        public final int surveyMaxPending;
+
+        Policy(int threads, ModelTier maxTier, boolean extraPasses, int surveyMaxPending) {
+            this.threads = Math.min(threads, Runtime.getRuntime().availableProcessors());
+            this.maxTier = maxTier;
+            this.extraPasses = extraPasses;
+            this.surveyMaxPending = surveyMaxPending;
+        }
+
+        /** The requested tier, or this policy's largest tier when the request is bigger. */
+        public ModelTier cap(ModelTier requested) {
+            return requested.ordinal() > maxTier.ordinal() ? maxTier : requested;
+        }
+    }
+
+    /** The current policy and what it was derived from. */
+    public static class Status {
+        public final Policy policy;
+        public final int thermalStatus;
+        public final boolean powerSave;
+        public final long since;
+
+        Status(Policy policy, int thermalStatus, boolean powerSave, long since) {
+            this.policy = policy;
+            this.thermalStatus = thermalStatus;
+            this.powerSave = powerSave;
+            this.since = since;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s policy: %d threads, up to %s, extra passes %s (thermal %s, battery saver %s, for %ds)",
+                    policy, policy.threads, policy.maxTier, policy.extraPasses ? "on" : "off",
+                    thermalName(thermalStatus), powerSave ? "on" : "off",
+                    (SystemClock.elapsedRealtime() - since) / 1000);
+        }
+    }
+
+    private final PowerManager powerManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<Status> status;
+    private final Runnable recover = this::evaluate;
+    // Main thread only
+    private int thermalStatus;
+    private boolean powerSave;
+    private long since = SystemClock.elapsedRealtime();
+    // When conditions first allowed a better policy than the current one; 0 while they do not
+    private long betterSince;
+    private volatile Policy policy;
+
+    private InferenceScheduler(Context context) {
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        powerSave = powerManager.isPowerSaveMode();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) thermalStatus = powerManager.getCurrentThermalStatus();
+        // Start where conditions already are, without waiting out the recovery delay
+        policy = target();
+        status = new MutableLiveData<>(new Status(policy, thermalStatus, powerSave, since));
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            powerManager.addThermalStatusListener(mainHandler::post, newStatus -> {
+                thermalStatus = newStatus;
+                evaluate();
+            });
+        }
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context receiverContext, Intent intent) {
+                powerSave = powerManager.isPowerSaveMode();
+                evaluate();
+            }
+        }, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED), null, mainHandler);
+    }
+
+    public static InferenceScheduler getInstance(Context context) {
+        if (instance == null) {
+            synchronized (InferenceScheduler.class) {
+                if (instance == null) instance = new InferenceScheduler(context.getApplicationContext());
+            }
+        }
+        return instance;
+    }
+
+    /** The policy in force; safe to read from any thread. */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public LiveData<Status> getStatus() {
+        return status;
+    }
+
+    // Main thread only. Steps down at once, but up only one level per quiet period
+    private void evaluate() {
+        mainHandler.removeCallbacks(recover);
+        Policy target = target();
+        if (target.ordinal() >= policy.ordinal()) {
+            betterSince = 0;
+            if (target != policy) apply(target);
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (betterSince == 0) betterSince = now;
+        long calmFor = now - betterSince;
+        if (calmFor < RECOVERY_DELAY_MS) {
+            mainHandler.postDelayed(recover, RECOVERY_DELAY_MS - calmFor);
+            return;
+        }
+        apply(Policy.values()[policy.ordinal() - 1]);
+        if (target.ordinal() < policy.ordinal()) {
+            // The next step up needs its own quiet period
+            betterSince = now;
+            mainHandler.postDelayed(recover, RECOVERY_DELAY_MS);
+        } else {
+            betterSince = 0;
+        }
+    }
+
+    private Policy target() {
+        Policy target = Policy.FULL;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+                target = Policy.MINIMAL;
+            } else if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+                target = Policy.REDUCED;
+            }
+        }
+        if (powerSave && target == Policy.FULL) target = Policy.REDUCED;
+        return target;
+    }
+
+    private void apply(Policy next) {
+        Log.d(TAG, "Policy " + policy + " -> " + next + " (thermal " + thermalName(thermalStatus)
+                + ", battery saver " + powerSave + ")");
+        policy = next;
+        since = SystemClock.elapsedRealtime();
+        status.setValue(new Status(policy, thermalStatus, powerSave, since));
+    }
+
+    private static String thermalName(int thermalStatus) {
+        switch (thermalStatus) {
+            case 0: return "none";
+            case 1: return "light";
+            case 2: return "moderate";
+            case 3: return "severe";
+            case 4: return "critical";
+            case 5: return "emergency";
+            case 6: return "shutdown";
+            default: return "unknown";
+        }
+    }
+}
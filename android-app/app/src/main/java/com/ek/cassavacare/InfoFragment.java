@@ -2,7 +2,7 @@
  * Project: CassavaCare
  * File: InfoFragment.java
  * Description: Fragment that hosts a ViewPager2 with tabs for displaying cassava disease information,
- *              farming tips, and app information.
+ *              farming tips, app information, and settings.
  *
  * Author: Emmanuel Kirui Barkacha
  * Email: ebarkacha@aimsammi.org
@@ -41,6 +41,7 @@ public class InfoFragment extends Fragment {
                 case 0: tab.setText("Diseases"); break;
                 case 1: tab.setText("Tips"); break;
                 case 2: tab.setText("About"); break;
+                case 3: tab.setText("Settings"); break;
             }
         }).attach();
 
@@ -1,8 +1,8 @@
 /*
  * Project: CassavaCare
  * File: InfoPagerAdapter.java
- * Description: Adapter for ViewPager2 used in InfoFragment to manage three sub-fragments:
- *              Diseases, Tips, and About.
+ * Description: Adapter for ViewPager2 used in InfoFragment to manage four sub-fragments:
+ *              Diseases, Tips, About, and Settings.
  *
  * Author: Emmanuel Kirui Barkacha
  * Email: ebarkacha@aimsammi.org
@@ -30,12 +30,13 @@ public class InfoPagerAdapter extends FragmentStateAdapter {
             case 0: return new DiseasesSubFragment();
             case 1: return new TipsSubFragment();
             case 2: return new AboutSubFragment();
+            case 3: return new SettingsSubFragment();
             default: return new DiseasesSubFragment();
         }
     }
 
     @Override
     public int getItemCount() {
-        return 3;
+        return 4;
     }
 }
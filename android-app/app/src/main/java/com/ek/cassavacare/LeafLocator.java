@@ -0,0 +1,224 @@
+/*
+ * Project: CassavaCare
+ * File: LeafLocator.java
+ * Description: Finds the leaf in a photo from a downsampled vegetation mask, so the model input can
+ *              be cropped around the leaf instead of the geometric center of the frame, and photos
+ *              holding several leaves can be classified leaf by leaf.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LeafLocator {
+    // Longest side of the mask; a few thousand pixels keeps the whole pass to a couple of ms
+    private static final int SAMPLE_SIZE = 64;
+    // Excess green (2G - R - B) above which a pixel counts as vegetation
+    private static final int MIN_EXCESS_GREEN = 20;
+    // The leaf must cover this share of the frame, otherwise the center crop is kept
+    private static final float MIN_LEAF_FRACTION = 0.04f;
+    // A leaf spanning this share of both sides already fills the center crop
+    private static final float FULL_FRAME_FRACTION = 0.9f;
+    // Margin around the leaf, as a share of its box, so leaf edges stay in the input
+    private static final float PADDING = 0.1f;
+    // Smallest crop as a share of the shorter side, so tiny blobs are not blown up into blur
+    private static final float MIN_CROP_FRACTION = 0.4f;
+
+    private static final int LEAF_HEALTHY = Color.parseColor("#43A047");
+    private static final int LEAF_DISEASED = Color.parseColor("#E53935");
+
+    private LeafLocator() {
+    }
+
+    /**
+     * The region of bitmap to feed a model input of width x height, centred on the largest patch of
+     * vegetation and never smaller than the input, so it is only ever scaled down; null when no
+     * clear leaf is found or it already fills the frame.
+     */
+    public static Rect locate(Bitmap bitmap, int width, int height) {
+        Mask mask = Mask.of(bitmap);
+        if (mask.components.isEmpty()) return null;
+        Component leaf = mask.components.get(0);
+        if (leaf.width() >= FULL_FRAME_FRACTION * mask.width && leaf.height() >= FULL_FRAME_FRACTION * mask.height) {
+            return null;
+        }
+        return crop(leaf, mask.scale, bitmap.getWidth(), bitmap.getHeight(), width, height);
+    }
+
+    /** Crops around every separate leaf, largest first and at most max of them. */
+    public static List<Rect> locateAll(Bitmap bitmap, int width, int height, int max) {
+        Mask mask = Mask.of(bitmap);
+        List<Rect> crops = new ArrayList<>();
+        for (Component leaf : mask.components) {
+            if (crops.size() == max) break;
+            crops.add(crop(leaf, mask.scale, bitmap.getWidth(), bitmap.getHeight(), width, height));
+        }
+        return crops;
+    }
+
+    /** A copy of image with each leaf outlined and numbered, red for diseased and green for healthy. */
+    public static Bitmap render(Bitmap image, List<LeafResult> leaves) {
+        Bitmap copy = image.copy(Bitmap.Config.ARGB_8888, true);
+        Canvas canvas = new Canvas(copy);
+        float stroke = Math.max(2f, copy.getWidth() / 200f);
+        Paint outline = new Paint(Paint.ANTI_ALIAS_FLAG);
+        outline.setStyle(Paint.Style.STROKE);
+        outline.setStrokeWidth(stroke);
+        Paint label = new Paint(Paint.ANTI_ALIAS_FLAG);
+        label.setTextSize(stroke * 8);
+        label.setFakeBoldText(true);
+        for (LeafResult leaf : leaves) {
+            int color = leaf.disease == null ? Color.GRAY
+                    : leaf.disease.equals(Classifier.LABELS[Classifier.HEALTHY_INDEX]) ? LEAF_HEALTHY : LEAF_DISEASED;
+            float left = leaf.left * copy.getWidth();
+            float top = leaf.top * copy.getHeight();
+            outline.setColor(color);
+            label.setColor(color);
+            canvas.drawRect(left, top, leaf.right * copy.getWidth(), leaf.bottom * copy.getHeight(), outline);
+            canvas.drawText(String.valueOf(leaf.leafIndex + 1), left + stroke * 2, top + label.getTextSize(), label);
+        }
+        return copy;
+    }
+
+    // A connected patch of vegetation, in mask pixels
+    private static class Component {
+        int area;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+
+        int width() {
+            return maxX - minX + 1;
+        }
+
+        int height() {
+            return maxY - minY + 1;
+        }
+    }
+
+    private static class Mask {
+        float scale;
+        int width;
+        int height;
+        // Leaf-sized components, largest first
+        final List<Component> components = new ArrayList<>();
+
+        static Mask of(Bitmap bitmap) {
+            Mask result = new Mask();
+            int imageWidth = bitmap.getWidth();
+            int imageHeight = bitmap.getHeight();
+            float scale = Math.min(1f, SAMPLE_SIZE / (float) Math.max(imageWidth, imageHeight));
+            int width = Math.max(1, Math.round(imageWidth * scale));
+            int height = Math.max(1, Math.round(imageHeight * scale));
+            result.scale = scale;
+            result.width = width;
+            result.height = height;
+            Bitmap sample = scale < 1f ? Bitmap.createScaledBitmap(bitmap, width, height, true) : bitmap;
+            int[] pixels = new int[width * height];
+            sample.getPixels(pixels, 0, width, 0, 0, width, height);
+            if (sample != bitmap) sample.recycle();
+
+            // Vegetation mask, dilated by one pixel so lesions and veins do not split a leaf apart
+            boolean[] green = new boolean[pixels.length];
+            for (int i = 0; i < pixels.length; i++) {
+                int pixel = pixels[i];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                green[i] = 2 * g - r - b > MIN_EXCESS_GREEN;
+            }
+            boolean[] mask = new boolean[pixels.length];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (!green[y * width + x]) continue;
+                    for (int dy = Math.max(0, y - 1); dy <= Math.min(height - 1, y + 1); dy++) {
+                        for (int dx = Math.max(0, x - 1); dx <= Math.min(width - 1, x + 1); dx++) {
+                            mask[dy * width + dx] = true;
+                        }
+                    }
+                }
+            }
+
+            // 8-connected components, by flood fill with an explicit stack
+            int[] stack = new int[pixels.length];
+            boolean[] seen = new boolean[pixels.length];
+            for (int start = 0; start < mask.length; start++) {
+                if (!mask[start] || seen[start]) continue;
+                Component component = new Component();
+                int depth = 0;
+                stack[depth++] = start;
+                seen[start] = true;
+                while (depth > 0) {
+                    int index = stack[--depth];
+                    int x = index % width;
+                    int y = index / width;
+                    component.area++;
+                    component.minX = Math.min(component.minX, x);
+                    component.maxX = Math.max(component.maxX, x);
+                    component.minY = Math.min(component.minY, y);
+                    component.maxY = Math.max(component.maxY, y);
+                    for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                        for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                            int next = ny * width + nx;
+                            if (mask[next] && !seen[next]) {
+                                seen[next] = true;
+                                stack[depth++] = next;
+                            }
+                        }
+                    }
+                }
+                if (component.area >= MIN_LEAF_FRACTION * pixels.length) result.components.add(component);
+            }
+            Collections.sort(result.components, (a, b) -> Integer.compare(b.area, a.area));
+            return result;
+        }
+    }
+
+    // Back to image coordinates, padded and grown to the model aspect around the leaf center
+    private static Rect crop(Component leaf, float scale, int imageWidth, int imageHeight, int inputWidth, int inputHeight) {
+        float aspect = inputWidth / (float) inputHeight;
+        float centerX = (leaf.minX + leaf.maxX + 1) / 2f / scale;
+        float centerY = (leaf.minY + leaf.maxY + 1) / 2f / scale;
+        float cropWidth = leaf.width() * (1f + 2 * PADDING) / scale;
+        float cropHeight = leaf.height() * (1f + 2 * PADDING) / scale;
+        float minSide = MIN_CROP_FRACTION * Math.min(imageWidth, imageHeight);
+        cropWidth = Math.max(cropWidth, minSide * Math.min(1f, aspect));
+        cropHeight = Math.max(cropHeight, minSide * Math.min(1f, 1f / aspect));
+        // A crop smaller than the input would be upscaled into blur, so it covers at least the input
+        cropWidth = Math.max(cropWidth, inputWidth);
+        cropHeight = Math.max(cropHeight, inputHeight);
+        if (cropWidth / cropHeight < aspect) {
+            cropWidth = cropHeight * aspect;
+        } else {
+            cropHeight = cropWidth / aspect;
+        }
+        if (cropWidth > imageWidth) {
+            cropWidth = imageWidth;
+            cropHeight = cropWidth / aspect;
+        }
+        if (cropHeight > imageHeight) {
+            cropHeight = imageHeight;
+            cropWidth = cropHeight * aspect;
+        }
+
+        int w = Math.max(1, Math.round(cropWidth));
+        int h = Math.max(1, Math.round(cropHeight));
+        int left = Math.round(centerX - w / 2f);
+        int top = Math.round(centerY - h / 2f);
+        left = Math.max(0, Math.min(left, imageWidth - w));
+        top = Math.max(0, Math.min(top, imageHeight - h));
+        return new Rect(left, top, left + w, top + h);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Project: CassavaCare
+ * File: LeafResult.java
+ * Description: Entity holding the classification of one leaf in a scan that showed several leaves.
+ *              Rows belong to their parent scan and are deleted with it.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.graphics.Rect;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+@Entity(tableName = "leaf_results",
+        foreignKeys = @ForeignKey(entity = ScanResult.class, parentColumns = "id", childColumns = "scan_id",
+                onDelete = ForeignKey.CASCADE),
+        indices = {@Index(value = {"scan_id"}, name = "index_leaf_results_scan_id")})
+public class LeafResult {
+    @PrimaryKey(autoGenerate = true)
+    public int id;
+
+    @ColumnInfo(name = "scan_id")
+    public int scanId;
+
+    // Position among the leaves of the scan, largest leaf first
+    @ColumnInfo(name = "leaf_index")
+    public int leafIndex;
+
+    // Leaf box as fractions of the image size, so it holds for any stored resolution
+    @ColumnInfo(name = "box_left")
+    public float left;
+    @ColumnInfo(name = "box_top")
+    public float top;
+    @ColumnInfo(name = "box_right")
+    public float right;
+    @ColumnInfo(name = "box_bottom")
+    public float bottom;
+
+    // Null when the model was uncertain about this leaf
+    public String disease;
+    public float confidence;
+
+    public LeafResult(int leafIndex, float left, float top, float right, float bottom, String disease, float confidence) {
+        this.leafIndex = leafIndex;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.disease = disease;
+        this.confidence = confidence;
+    }
+
+    /** A row for a leaf found at box in an image of the given size. */
+    public static LeafResult from(int leafIndex, Rect box, int imageWidth, int imageHeight, Classification classification) {
+        return new LeafResult(leafIndex,
+                box.left / (float) imageWidth, box.top / (float) imageHeight,
+                box.right / (float) imageWidth, box.bottom / (float) imageHeight,
+                classification.label, classification.confidence);
+    }
+}
@@ -48,6 +48,8 @@ public class MainActivity extends AppCompatActivity {
         // Remove or comment out the next line to avoid the ActionBar requirement
         // NavigationUI.setupActionBarWithNavController(this, navController, appBarConfiguration);
         NavigationUI.setupWithNavController(navView, navController);
+        // Older scans get list thumbnails in the background
+        ThumbnailBackfill.runIfNeeded(this);
     }
     @Override
     public void onBackPressed() {
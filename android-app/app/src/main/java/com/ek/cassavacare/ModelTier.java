@@ -0,0 +1,75 @@
+/*
+ * Project: CassavaCare
+ * File: ModelTier.java
+ * Description: Resolution-specific variants of the cassava model, from the lightest input
+ *              resolution for budget phones to the full 380 px model.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public enum ModelTier {
+    // Ordered from cheapest to most accurate
+    FAST(260, "cassava_model_260.tflite", "Fast (260 px)"),
+    BALANCED(300, "cassava_model_300.tflite", "Balanced (300 px)"),
+    ACCURATE(380, "cassava_model.tflite", "Accurate (380 px)");
+
+    public final int inputSize;
+    public final String assetName;
+    public final String label;
+
+    ModelTier(int inputSize, String assetName, String label) {
+        this.inputSize = inputSize;
+        this.assetName = assetName;
+        this.label = label;
+    }
+
+    /** Tiers whose model file is actually bundled in the APK, cheapest first. */
+    public static List<ModelTier> available(Context context) {
+        List<ModelTier> tiers = new ArrayList<>();
+        try {
+            List<String> assets = Arrays.asList(context.getAssets().list(""));
+            for (ModelTier tier : values()) {
+                if (assets.contains(tier.assetName)) tiers.add(tier);
+            }
+        } catch (IOException e) {
+            // Fall through to the default model below
+        }
+        if (tiers.isEmpty()) tiers.add(ACCURATE);
+        return tiers;
+    }
+
+    /** The requested tier if bundled, otherwise the nearest bundled tier. */
+    public static ModelTier resolve(Context context, ModelTier requested) {
+        List<ModelTier> tiers = available(context);
+        if (tiers.contains(requested)) return requested;
+        ModelTier best = tiers.get(0);
+        for (ModelTier tier : tiers) {
+            if (Math.abs(tier.inputSize - requested.inputSize) < Math.abs(best.inputSize - requested.inputSize)) {
+                best = tier;
+            }
+        }
+        return best;
+    }
+
+    public static ModelTier fromName(String name, ModelTier fallback) {
+        if (name == null) return fallback;
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
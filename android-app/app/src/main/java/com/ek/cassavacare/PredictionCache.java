@@ -0,0 +1,77 @@
+/*
+ * Project: CassavaCare
+ * File: PredictionCache.java
+ * Description: Persistent perceptual-hash -> probabilities cache with near-duplicate lookup by
+ *              Hamming distance and LRU eviction.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.util.Log;
+import java.util.List;
+
+public class PredictionCache {
+    private static final String TAG = "PredictionCache";
+    private static final int MAX_ENTRIES = 500;
+    // Guaranteed to be found by the 4 x 16-bit band lookup (pigeonhole principle)
+    private static final int MAX_DISTANCE = ImageHash.BANDS - 1;
+
+    private final PredictionCacheDao dao;
+
+    public PredictionCache(AppDatabase db) {
+        this.dao = db.predictionCacheDao();
+    }
+
+    /** Probabilities cached for the closest near-duplicate image, or null. Must run off the main thread. */
+    public float[] lookup(long hash, String model) {
+        List<PredictionCacheEntry> candidates = dao.findCandidates(model,
+                ImageHash.band(hash, 0), ImageHash.band(hash, 1), ImageHash.band(hash, 2), ImageHash.band(hash, 3));
+
+        PredictionCacheEntry best = null;
+        int bestDistance = MAX_DISTANCE + 1;
+        for (PredictionCacheEntry candidate : candidates) {
+            int distance = ImageHash.hammingDistance(hash, candidate.hash);
+            if (distance < bestDistance) {
+                best = candidate;
+                bestDistance = distance;
+            }
+        }
+        if (best == null) return null;
+
+        Log.d(TAG, "Cache hit at Hamming distance " + bestDistance);
+        dao.touch(best.hash, model, System.currentTimeMillis());
+        return decode(best.probabilities);
+    }
+
+    /** Stores probabilities for a hash, evicting the least recently used entries past the cap. */
+    public void store(long hash, String model, float[] probabilities) {
+        dao.insert(new PredictionCacheEntry(hash, model, encode(probabilities), System.currentTimeMillis()));
+        int overflow = dao.count() - MAX_ENTRIES;
+        if (overflow > 0) dao.evictOldest(overflow);
+    }
+
+    private static String encode(float[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    private static float[] decode(String encoded) {
+        String[] parts = encoded.split(",");
+        float[] values = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Float.parseFloat(parts[i]);
+        }
+        return values;
+    }
+}
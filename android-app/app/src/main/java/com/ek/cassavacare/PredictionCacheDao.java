@@ -0,0 +1,42 @@
+/*
+ * Project: CassavaCare
+ * File: PredictionCacheDao.java
+ * Description: Data Access Object for the perceptual-hash prediction cache, with band lookups
+ *              for near-duplicate search and least-recently-used eviction.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import java.util.List;
+
+@Dao
+public interface PredictionCacheDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(PredictionCacheEntry entry);
+
+    // Each OR branch is served by its own band index
+    @Query("SELECT * FROM prediction_cache WHERE model = :model AND " +
+            "(band0 = :band0 OR band1 = :band1 OR band2 = :band2 OR band3 = :band3)")
+    List<PredictionCacheEntry> findCandidates(String model, int band0, int band1, int band2, int band3);
+
+    @Query("UPDATE prediction_cache SET last_used = :lastUsed WHERE hash = :hash AND model = :model")
+    void touch(long hash, String model, long lastUsed);
+
+    @Query("SELECT COUNT(*) FROM prediction_cache")
+    int count();
+
+    @Query("DELETE FROM prediction_cache WHERE rowid IN " +
+            "(SELECT rowid FROM prediction_cache ORDER BY last_used ASC LIMIT :count)")
+    void evictOldest(int count);
+}
@@ -0,0 +1,54 @@
+/*
+ * Project: CassavaCare
+ * File: PredictionCacheEntry.java
+ * Description: Entity caching model probabilities by perceptual image hash, so repeat scans of
+ *              the same photo skip inference.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+@Entity(tableName = "prediction_cache",
+        primaryKeys = {"hash", "model"},
+        indices = {
+                @Index(value = {"band0"}, name = "index_prediction_cache_band0"),
+                @Index(value = {"band1"}, name = "index_prediction_cache_band1"),
+                @Index(value = {"band2"}, name = "index_prediction_cache_band2"),
+                @Index(value = {"band3"}, name = "index_prediction_cache_band3"),
+                @Index(value = {"last_used"}, name = "index_prediction_cache_last_used")
+        })
+public class PredictionCacheEntry {
+    public long hash;
+    @NonNull
+    public String model; // Model configuration the probabilities came from
+    public int band0;
+    public int band1;
+    public int band2;
+    public int band3;
+    public String probabilities; // Comma-separated, one value per label
+
+    @ColumnInfo(name = "last_used")
+    public long lastUsed;
+
+    public PredictionCacheEntry(long hash, @NonNull String model, String probabilities, long lastUsed) {
+        this.hash = hash;
+        this.model = model;
+        this.band0 = ImageHash.band(hash, 0);
+        this.band1 = ImageHash.band(hash, 1);
+        this.band2 = ImageHash.band(hash, 2);
+        this.band3 = ImageHash.band(hash, 3);
+        this.probabilities = probabilities;
+        this.lastUsed = lastUsed;
+    }
+}
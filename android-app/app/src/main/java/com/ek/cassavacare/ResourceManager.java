@@ -0,0 +1,151 @@
+/*
+ * Project: CassavaCare
+ * File: ResourceManager.java
+ * Description: Releases memory-heavy resources when the system reports memory pressure. Owners
+ *              register what they hold with a cost estimate and a tier; on each trim level the
+ *              eligible tiers are released, cheapest to rebuild first, and owners rebuild lazily.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ResourceManager implements ComponentCallbacks2 {
+    private static final String TAG = "ResourceManager";
+    private static volatile ResourceManager instance;
+
+    /** How readily a resource is given up, in release order; each tier has the lowest trim level that frees it. */
+    public enum Tier {
+        // Caches and scratch state rebuilt on the next use at little cost
+        CACHE(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW),
+        // Worth keeping while the user looks at the app, cheap enough to rebuild once they come back
+        UI(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN),
+        // Slow to rebuild; only dropped once the process is in the background LRU list
+        MODEL(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        final int minLevel;
+
+        Tier(int minLevel) {
+            this.minLevel = minLevel;
+        }
+    }
+
+    /** Something that can be dropped and rebuilt on demand by its owner. */
+    public interface Releasable {
+        /** Approximate bytes held right now; 0 once released. */
+        long estimateBytes();
+
+        /** Drops the resource; called on the main thread, so slow work should be handed off. */
+        void release();
+    }
+
+    /** Handle for unregistering. */
+    public static class Registration {
+        final String name;
+        final Tier tier;
+        final Releasable releasable;
+
+        Registration(String name, Tier tier, Releasable releasable) {
+            this.name = name;
+            this.tier = tier;
+            this.releasable = releasable;
+        }
+    }
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    private ResourceManager() {
+        // SQLite keeps a page cache per connection that it can shrink on request
+        register("sqlite page cache", Tier.CACHE, new Releasable() {
+            @Override
+            public long estimateBytes() {
+                return 0;
+            }
+
+            @Override
+            public void release() {
+                SQLiteDatabase.releaseMemory();
+            }
+        });
+    }
+
+    public static ResourceManager getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ResourceManager.class) {
+                if (instance == null) {
+                    instance = new ResourceManager();
+                    context.getApplicationContext().registerComponentCallbacks(instance);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public Registration register(String name, Tier tier, Releasable releasable) {
+        Registration registration = new Registration(name, tier, releasable);
+        registrations.add(registration);
+        return registration;
+    }
+
+    public void unregister(Registration registration) {
+        registrations.remove(registration);
+    }
+
+    /** Total estimated bytes held by registered resources, for diagnostics. */
+    public long estimateBytes() {
+        long total = 0;
+        for (Registration registration : registrations) total += registration.releasable.estimateBytes();
+        return total;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        List<Registration> eligible = new ArrayList<>();
+        for (Registration registration : registrations) {
+            if (level >= registration.tier.minLevel) eligible.add(registration);
+        }
+        if (eligible.isEmpty()) return;
+        // Cheapest tier first; within a tier, whatever holds the most
+        Collections.sort(eligible, (a, b) -> {
+            int byTier = a.tier.compareTo(b.tier);
+            return byTier != 0 ? byTier : Long.compare(b.releasable.estimateBytes(), a.releasable.estimateBytes());
+        });
+        long freed = 0;
+        for (Registration registration : eligible) {
+            long bytes = registration.releasable.estimateBytes();
+            try {
+                registration.releasable.release();
+                freed += bytes;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to release " + registration.name + ": " + e.getMessage());
+            }
+        }
+        Log.d(TAG, "Trim level " + level + ": released " + eligible.size() + " resources, about "
+                + freed / 1024 + " KB");
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
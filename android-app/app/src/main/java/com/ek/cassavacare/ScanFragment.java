@@ -16,14 +16,19 @@
 package com.ek.cassavacare;
 
 import android.Manifest;
+import android.app.AlertDialog;
 import android.content.ActivityNotFoundException;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.RectF;
+import android.location.Location;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -31,6 +36,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -41,35 +47,34 @@ import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
 import androidx.camera.core.Preview;
+import androidx.camera.core.UseCaseGroup;
+import androidx.camera.core.ViewPort;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.navigation.NavController;
 import androidx.navigation.Navigation;
-import androidx.room.Room;
 
 import com.ek.cassavacare.R;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.common.util.concurrent.ListenableFuture;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class ScanFragment extends Fragment {
     private static final String TAG = "ScanFragment";
     private PreviewView previewView;
     private ImageCapture imageCapture;
-    private Classifier classifier;
-    private AppDatabase db;
-    private ExecutorService executorService;
+    private ScanViewModel viewModel;
+    private ClassifierLoader classifierLoader;
+    private ScanWriter scanWriter;
+    private ScanLocator scanLocator;
     private ProgressBar progressBar;
     private Button retakeButton, captureButton, uploadButton;
     private ImageView imgThumbnail;
@@ -77,6 +82,23 @@ public class ScanFragment extends Fragment {
     private static final int CAMERA_PERMISSION_CODE = 100;
     private static final int STORAGE_PERMISSION_CODE = 101;
     private ActivityResultLauncher<Intent> galleryLauncher;
+    private ActivityResultLauncher<String[]> bulkImportLauncher;
+    private LinearLayout layoutBulkImport;
+    private TextView tvBulkProgress;
+    private ProgressBar pbBulkImport;
+    private Button bulkImportButton;
+    private Button surveyButton;
+    private LinearLayout layoutSurvey;
+    private TextView tvSurveyTally;
+    private ScanViewModel.SurveyTally survey;
+    private TextView tvPerformanceOverlay;
+    private View guideFrame;
+    private CaptureProfile captureProfile;
+    // Captures carry the preview's crop, so the guide frame can be mapped onto them
+    private boolean viewPortApplied;
+    private static final long OVERLAY_REFRESH_MS = 1000;
+    private final Handler overlayHandler = new Handler(Looper.getMainLooper());
+    private final Runnable refreshOverlay = this::refreshOverlay;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -90,25 +112,52 @@ public class ScanFragment extends Fragment {
         imgThumbnail = root.findViewById(R.id.img_thumbnail);
         tvResult = root.findViewById(R.id.tv_result);
         tvRemedy = root.findViewById(R.id.tv_remedy);
-
-        // Initialize Room database and executor service
-        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "database-name").build();
-        executorService = Executors.newSingleThreadExecutor();
-
-        // Initialize classifier asynchronously
+        bulkImportButton = root.findViewById(R.id.btn_bulk_import);
+        layoutBulkImport = root.findViewById(R.id.layout_bulk_import);
+        tvBulkProgress = root.findViewById(R.id.tv_bulk_progress);
+        pbBulkImport = root.findViewById(R.id.pb_bulk_import);
+        surveyButton = root.findViewById(R.id.btn_survey);
+        layoutSurvey = root.findViewById(R.id.layout_survey);
+        tvSurveyTally = root.findViewById(R.id.tv_survey_tally);
+        tvPerformanceOverlay = root.findViewById(R.id.tv_performance_overlay);
+        guideFrame = root.findViewById(R.id.view_guide_frame);
+
+        scanWriter = ScanWriter.getInstance(requireContext());
+        scanLocator = new ScanLocator(requireContext());
+
+        // The view model loads the classifier and owns the scan in progress, so both outlive
+        // this view; its latest state is shown again after a rotation or tab switch
+        viewModel = new ViewModelProvider(requireActivity()).get(ScanViewModel.class);
+        classifierLoader = viewModel.getClassifierLoader();
         initializeClassifier();
+        viewModel.getState().observe(getViewLifecycleOwner(), this::showState);
+        viewModel.getSurvey().observe(getViewLifecycleOwner(), this::showSurvey);
+        viewModel.getBulkProgress().observe(getViewLifecycleOwner(), this::showBulkImport);
 
         // Initialize gallery launcher
         galleryLauncher = registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
             if (result.getResultCode() == requireActivity().RESULT_OK && result.getData() != null) {
                 Uri imageUri = result.getData().getData();
-                processImageFromUri(imageUri);
+                viewModel.analyzeUri(imageUri);
             } else {
                 Toast.makeText(requireContext(), "Image selection canceled", Toast.LENGTH_SHORT).show();
-                resetToCamera();
+                viewModel.reset();
             }
         });
 
+        // Multi-select launcher for bulk import; persistable grants let an interrupted import resume
+        bulkImportLauncher = registerForActivityResult(new ActivityResultContracts.OpenMultipleDocuments(), uris -> {
+            if (uris == null || uris.isEmpty()) return;
+            for (Uri uri : uris) {
+                try {
+                    requireContext().getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                } catch (SecurityException e) {
+                    Log.w(TAG, "No persistable permission for " + uri);
+                }
+            }
+            startBulkImport(uris);
+        });
+
         // Check camera permission
         if (ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
             startCamera();
@@ -124,7 +173,16 @@ public class ScanFragment extends Fragment {
         // Set button listeners
         captureButton.setOnClickListener(v -> takePhoto());
         uploadButton.setOnClickListener(v -> openGallery());
-        retakeButton.setOnClickListener(v -> resetToCamera());
+        retakeButton.setOnClickListener(v -> viewModel.reset());
+        bulkImportButton.setOnClickListener(v -> bulkImportLauncher.launch(new String[]{"image/*"}));
+        surveyButton.setOnClickListener(v -> {
+            viewModel.reset();
+            viewModel.startSurvey();
+        });
+        root.findViewById(R.id.btn_survey_finish).setOnClickListener(v -> viewModel.finishSurvey());
+        root.findViewById(R.id.btn_bulk_cancel).setOnClickListener(v -> viewModel.cancelBulkImport());
+        // A running import is picked up from the view model instead
+        if (!viewModel.isBulkImportRunning()) offerToResumeBulkImport();
 
         BottomNavigationView bottomNav = requireActivity().findViewById(R.id.nav_view);
         NavController navController = Navigation.findNavController(requireActivity(), R.id.nav_host_fragment);
@@ -145,18 +203,72 @@ public class ScanFragment extends Fragment {
     }
 
     private void initializeClassifier() {
-        executorService.execute(() -> {
-            try {
-                Log.d(TAG, "Initializing Classifier...");
-                classifier = new Classifier(requireContext());
-                Log.d(TAG, "Classifier initialized successfully");
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to initialize Classifier: " + e.getMessage());
-                requireActivity().runOnUiThread(() -> Toast.makeText(requireContext(), "Model loading failed", Toast.LENGTH_SHORT).show());
+        classifierLoader.whenReady(new ClassifierLoader.Callback() {
+            @Override
+            public void onReady(Classifier classifier) {
+            }
+
+            @Override
+            public void onFailed(String message) {
+                if (!isAdded()) return;
+                requireActivity().runOnUiThread(() -> Toast.makeText(requireContext(), message, Toast.LENGTH_SHORT).show());
             }
         });
     }
 
+    private void startBulkImport(List<Uri> uris) {
+        if (classifierLoader.getIfReady() == null) {
+            Toast.makeText(requireContext(), "Model is loading, the import will start shortly", Toast.LENGTH_SHORT).show();
+        }
+        viewModel.startBulkImport(uris);
+    }
+
+    private void offerToResumeBulkImport() {
+        if (!BulkImportPipeline.hasPendingJob(requireContext())) return;
+        int done = BulkImportPipeline.pendingDone(requireContext());
+        int total = BulkImportPipeline.pendingUris(requireContext()).size();
+        new AlertDialog.Builder(requireContext(), R.style.Theme_CassavaCare_Dialog)
+                .setTitle("Resume import?")
+                .setMessage("An earlier import stopped after " + done + " of " + total + " images.")
+                .setPositiveButton("Resume", (dialog, which) -> viewModel.resumeBulkImport())
+                .setNegativeButton("Discard", (dialog, which) -> BulkImportPipeline.clearPendingJob(requireContext()))
+                .show();
+    }
+
+    private void showBulkImport(ScanViewModel.BulkProgress progress) {
+        if (progress == null || progress.finished) {
+            layoutBulkImport.setVisibility(View.GONE);
+            // Only when the import has just ended; a recreated view sets up its own buttons
+            if (progress != null && progress.takeNotice()) {
+                bulkImportButton.setVisibility(survey == null ? View.VISIBLE : View.GONE);
+                surveyButton.setVisibility(survey == null ? View.VISIBLE : View.GONE);
+                String counts = progress.saved + " saved, " + progress.rejected + " rejected, "
+                        + progress.duplicates + " already in history";
+                String message;
+                if (progress.cancelled) {
+                    message = "Import paused, " + counts + ". You can resume it later.";
+                } else if (progress.failed > 0) {
+                    message = "Import finished: " + counts + ", " + progress.failed
+                            + " failed. Resume it to retry the failed images.";
+                } else {
+                    message = "Import finished: " + counts;
+                }
+                Toast.makeText(requireContext(), message, Toast.LENGTH_LONG).show();
+            }
+            return;
+        }
+        bulkImportButton.setVisibility(View.GONE);
+        surveyButton.setVisibility(View.GONE);
+        layoutBulkImport.setVisibility(View.VISIBLE);
+        pbBulkImport.setMax(progress.total);
+        pbBulkImport.setProgress(progress.done);
+        String text = "Analyzed " + progress.done + " of " + progress.total + " (" + progress.saved + " saved, "
+                + progress.rejected + " rejected";
+        if (progress.duplicates > 0) text += ", " + progress.duplicates + " already in history";
+        if (progress.failed > 0) text += ", " + progress.failed + " failed";
+        tvBulkProgress.setText(text + ")");
+    }
+
     private void startCamera() {
         Log.d(TAG, "Starting camera...");
         ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(requireContext());
@@ -166,12 +278,11 @@ public class ScanFragment extends Fragment {
                 ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
                 Preview preview = new Preview.Builder().build();
                 preview.setSurfaceProvider(previewView.getSurfaceProvider());
-                imageCapture = new ImageCapture.Builder().build();
-                CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
-                cameraProvider.unbindAll();
-                cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageCapture);
-                Log.d(TAG, "Camera bound successfully");
-                captureButton.setVisibility(View.VISIBLE);
+                // Sized for what preprocessing keeps rather than the full sensor
+                captureProfile = CaptureProfile.forDevice(requireContext());
+                imageCapture = captureProfile.buildImageCapture();
+                // The view port only exists once the preview has been laid out, so bind after layout
+                previewView.post(() -> bindUseCases(cameraProvider, preview));
 
             } catch (ExecutionException | InterruptedException e) {
                 Log.e(TAG, "Camera initialization failed: " + e.getMessage());
@@ -181,45 +292,144 @@ public class ScanFragment extends Fragment {
         }, ContextCompat.getMainExecutor(requireContext()));
     }
 
+    private void bindUseCases(ProcessCameraProvider cameraProvider, Preview preview) {
+        if (!isAdded() || getView() == null) return;
+        CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
+        cameraProvider.unbindAll();
+        ViewPort viewPort = previewView.getViewPort();
+        viewPortApplied = viewPort != null;
+        if (viewPortApplied) {
+            cameraProvider.bindToLifecycle(this, cameraSelector, new UseCaseGroup.Builder()
+                    .setViewPort(viewPort)
+                    .addUseCase(preview)
+                    .addUseCase(imageCapture)
+                    .build());
+        } else {
+            // Captures then keep the whole frame instead of the part inside the guide
+            Log.w(TAG, "No view port for the preview, capturing without the guide crop");
+            cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageCapture);
+        }
+        Log.d(TAG, "Camera bound successfully, " + captureProfile.describe(requireContext()));
+        captureButton.setVisibility(View.VISIBLE);
+    }
+
     private void takePhoto() {
-        if (imageCapture == null || classifier == null) {
-            Toast.makeText(requireContext(), "Camera or model not initialized", Toast.LENGTH_SHORT).show();
+        // A model still loading is fine: the capture waits for it in the view model
+        if (imageCapture == null) {
+            Toast.makeText(requireContext(), "Camera not initialized", Toast.LENGTH_SHORT).show();
             return;
         }
+        if (survey != null) {
+            takeSurveyPhoto();
+            return;
+        }
+
+        // Only camera captures are geotagged, with the fix from the moment of capture
+        Location fix = scanLocator.current();
+        RectF guide = currentGuide();
+        CaptureLatency latency = new CaptureLatency();
+        viewModel.startCapture();
+        // The callback belongs to the view model, so a rotation mid-capture does not lose the photo
+        imageCapture.takePicture(viewModel.captureExecutor(), new ImageCapture.OnImageCapturedCallback() {
+            @Override
+            public void onCaptureSuccess(@NonNull androidx.camera.core.ImageProxy image) {
+                latency.record();
+                viewModel.analyzeCapture(image, guide, fix);
+            }
 
-        requireActivity().runOnUiThread(() -> {
-            progressBar.setVisibility(View.VISIBLE);
-            progressBar.animate().alpha(1f).setDuration(200).start();
-            previewView.setVisibility(View.GONE);
-            captureButton.setVisibility(View.GONE);
-            uploadButton.setVisibility(View.GONE);
-            captureButton.setEnabled(false);
-            uploadButton.setEnabled(false);
+            @Override
+            public void onError(@NonNull ImageCaptureException exception) {
+                viewModel.captureFailed("Capture failed: " + exception.getMessage());
+            }
         });
+    }
 
-        imageCapture.takePicture(ContextCompat.getMainExecutor(requireContext()), new ImageCapture.OnImageCapturedCallback() {
+    // The shutter stays live: the frame is decoded, classified and saved in the background
+    private void takeSurveyPhoto() {
+        if (!viewModel.canTakeSurveyShot()) return;
+        Location fix = scanLocator.current();
+        RectF guide = currentGuide();
+        CaptureLatency latency = new CaptureLatency();
+        int surveyId = viewModel.surveyShotTaken();
+        imageCapture.takePicture(viewModel.captureExecutor(), new ImageCapture.OnImageCapturedCallback() {
             @Override
             public void onCaptureSuccess(@NonNull androidx.camera.core.ImageProxy image) {
-                Bitmap bitmap = imageProxyToBitmap(image);
-                image.close();
-                processImage(bitmap);
+                latency.record();
+                viewModel.analyzeSurveyFrame(surveyId, image, guide, fix);
             }
 
             @Override
             public void onError(@NonNull ImageCaptureException exception) {
-                requireActivity().runOnUiThread(() -> {
-                    progressBar.animate().alpha(0f).setDuration(200).withEndAction(() -> progressBar.setVisibility(View.GONE)).start();
-                    previewView.setVisibility(View.VISIBLE);
-                    captureButton.setEnabled(true);
-                    uploadButton.setEnabled(true);
-                    captureButton.setVisibility(View.VISIBLE);
-                    uploadButton.setVisibility(View.VISIBLE);
-                    Toast.makeText(requireContext(), "Capture failed: " + exception.getMessage(), Toast.LENGTH_SHORT).show();
-                });
+                Log.e(TAG, "Survey capture failed: " + exception.getMessage());
+                viewModel.surveyShotFailed(surveyId);
             }
         });
     }
 
+    // The guide frame as a fraction of the preview, or null when captures are not cropped to it
+    private RectF currentGuide() {
+        return viewPortApplied ? CaptureProfile.guideFraction(guideFrame, previewView) : null;
+    }
+
+    // Shutter-to-image time of one capture, recorded against the profile it was taken with
+    private class CaptureLatency {
+        private final long start = SystemClock.elapsedRealtime();
+        private final CaptureProfile profile = captureProfile;
+        private final Context appContext = requireContext().getApplicationContext();
+
+        void record() {
+            if (profile != null) profile.recordLatency(appContext, SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    private void showSurvey(ScanViewModel.SurveyTally tally) {
+        boolean wasActive = survey != null;
+        survey = tally;
+        boolean active = tally != null;
+        layoutSurvey.setVisibility(active ? View.VISIBLE : View.GONE);
+        boolean importing = viewModel.isBulkImportRunning();
+        surveyButton.setVisibility(active || importing ? View.GONE : View.VISIBLE);
+        if (!importing) bulkImportButton.setVisibility(active ? View.GONE : View.VISIBLE);
+        if (!active) {
+            // Leaving the survey; otherwise the single-scan state owns the buttons
+            if (wasActive) resetToCamera();
+            return;
+        }
+        uploadButton.setVisibility(View.GONE);
+
+        StringBuilder text = new StringBuilder("Survey: " + tally.captured + " shots");
+        if (tally.pending > 0) text.append(", ").append(tally.pending).append(" processing");
+        for (Map.Entry<String, Integer> count : tally.counts.entrySet()) {
+            if (count.getValue() > 0) text.append("\n").append(count.getKey()).append(": ").append(count.getValue());
+        }
+        if (tally.rejected > 0) text.append("\nUnclear: ").append(tally.rejected);
+        tvSurveyTally.setText(text);
+        captureButton.setEnabled(!tally.finishing && tally.pending < viewModel.surveyMaxPending());
+        captureButton.setVisibility(tally.finishing ? View.GONE : View.VISIBLE);
+
+        if (tally.takeSummary()) showSurveySummary(tally);
+    }
+
+    private void showSurveySummary(ScanViewModel.SurveyTally tally) {
+        int classified = tally.captured - tally.rejected;
+        StringBuilder summary = new StringBuilder();
+        summary.append(tally.captured).append(" shots in ")
+                .append(Math.max(1, (System.currentTimeMillis() - tally.startedAt) / 60_000)).append(" min, ")
+                .append(classified).append(" classified.\n");
+        for (Map.Entry<String, Integer> count : tally.counts.entrySet()) {
+            if (count.getValue() == 0) continue;
+            summary.append("\n").append(count.getKey()).append(": ").append(count.getValue())
+                    .append(" (").append(Math.round(100f * count.getValue() / classified)).append("%)");
+        }
+        if (tally.rejected > 0) summary.append("\n\n").append(tally.rejected).append(" shots were too unclear to classify.");
+        new AlertDialog.Builder(requireContext(), R.style.Theme_CassavaCare_Dialog)
+                .setTitle("Survey complete")
+                .setMessage(summary)
+                .setPositiveButton("OK", (dialog, which) -> viewModel.closeSurvey())
+                .setOnCancelListener(dialog -> viewModel.closeSurvey())
+                .show();
+    }
+
     private void openGallery() {
         Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
         try {
@@ -231,122 +441,80 @@ public class ScanFragment extends Fragment {
                 galleryLauncher.launch(fallbackIntent);
             } catch (ActivityNotFoundException ex) {
                 Toast.makeText(requireContext(), "No gallery or file picker available", Toast.LENGTH_SHORT).show();
-                resetToCamera();
+                viewModel.reset();
             }
         }
     }
 
-    private void processImageFromUri(Uri imageUri) {
-        try {
-            InputStream inputStream = requireContext().getContentResolver().openInputStream(imageUri);
-            Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-            inputStream.close();
-            if (bitmap != null) {
-                requireActivity().runOnUiThread(() -> {
-                    progressBar.setVisibility(View.VISIBLE);
-                    progressBar.animate().alpha(1f).setDuration(200).start();
-                    previewView.setVisibility(View.GONE);
-                    captureButton.setEnabled(false);
-                    uploadButton.setEnabled(false);
-                    captureButton.setVisibility(View.GONE);
-                    uploadButton.setVisibility(View.GONE);
-                });
-                processImage(bitmap);
-            } else {
-                requireActivity().runOnUiThread(() -> {
-                    progressBar.animate().alpha(0f).setDuration(200).withEndAction(() -> progressBar.setVisibility(View.GONE)).start();
-                    previewView.setVisibility(View.VISIBLE);
-                    captureButton.setEnabled(true);
-                    uploadButton.setEnabled(true);
-                    captureButton.setVisibility(View.VISIBLE);
-                    uploadButton.setVisibility(View.VISIBLE);
-                    Toast.makeText(requireContext(), "Failed to load image", Toast.LENGTH_SHORT).show();
-                });
-            }
-        } catch (IOException e) {
-            requireActivity().runOnUiThread(() -> {
-                progressBar.animate().alpha(0f).setDuration(200).withEndAction(() -> progressBar.setVisibility(View.GONE)).start();
-                previewView.setVisibility(View.VISIBLE);
-                captureButton.setEnabled(true);
-                uploadButton.setEnabled(true);
-                captureButton.setVisibility(View.VISIBLE);
-                uploadButton.setVisibility(View.VISIBLE);
-                Toast.makeText(requireContext(), "Error loading image", Toast.LENGTH_SHORT).show();
-            });
-        }
-    }
-
-    private void processImage(Bitmap bitmap) {
-        if (classifier == null) {
-            Log.e(TAG, "Classifier not initialized");
-            requireActivity().runOnUiThread(() -> {
-                Toast.makeText(requireContext(), "Model not ready, please try again.", Toast.LENGTH_SHORT).show();
+    private void showState(ScanViewModel.ScanState state) {
+        switch (state.phase) {
+            case IDLE:
                 resetToCamera();
-            });
-            return;
+                break;
+            case PROCESSING:
+                showProgress();
+                break;
+            case RESULT:
+                showResult(state);
+                break;
+            case FAILED:
+                if (state.takeNotice()) Toast.makeText(requireContext(), state.message, Toast.LENGTH_SHORT).show();
+                viewModel.reset();
+                break;
         }
-        executorService.execute(() -> {
-            try {
-                String result = classifier.classify(bitmap);
-                if (result.contains("uncertain about this image")) {
-                    // Classification was not confident
-                    requireActivity().runOnUiThread(() -> {
-                        int textColor = ContextCompat.getColor(requireContext(), R.color.error_red);
-                        tvResult.setTextColor(textColor);
-                        progressBar.animate().alpha(0f).setDuration(200).withEndAction(() -> progressBar.setVisibility(View.GONE)).start();
-                        imgThumbnail.setImageBitmap(bitmap);
-                        imgThumbnail.setVisibility(View.VISIBLE);
-                        tvResult.setText(result);
-                        tvResult.setVisibility(View.VISIBLE);
-                        tvRemedy.setVisibility(View.GONE);
-                        retakeButton.setVisibility(View.VISIBLE);
-                        captureButton.setEnabled(true);
-                        uploadButton.setEnabled(true);
-                        captureButton.setVisibility(View.GONE);
-                        uploadButton.setVisibility(View.GONE);
-                    });
-                } else {
+    }
 
-                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                    bitmap.compress(Bitmap.CompressFormat.PNG, 70, outputStream);
-                    byte[] imageBytes = outputStream.toByteArray();
-
-                    ScanResult scanResult = new ScanResult(result, System.currentTimeMillis(), imageBytes);
-                    executorService.execute(() -> db.scanResultDao().insert(scanResult));
-
-                    requireActivity().runOnUiThread(() -> {
-                        int textColor = ContextCompat.getColor(requireContext(), R.color.text_primary);
-                        tvResult.setTextColor(textColor);
-                        progressBar.animate().alpha(0f).setDuration(200).withEndAction(() -> progressBar.setVisibility(View.GONE)).start();
-                        imgThumbnail.setImageBitmap(bitmap);
-                        imgThumbnail.setVisibility(View.VISIBLE);
-                        tvResult.setText(result);
-                        tvResult.setVisibility(View.VISIBLE);
-                        tvRemedy.setText(getRemedy(result.split(" - ")[0]));
-                        tvRemedy.setVisibility(View.VISIBLE);
-                        retakeButton.setVisibility(View.VISIBLE);
-                        captureButton.setEnabled(true);
-                        uploadButton.setEnabled(true);
-                        captureButton.setVisibility(View.GONE);
-                        uploadButton.setVisibility(View.GONE);
-                    });
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Classification failed: " + e.getMessage());
-                requireActivity().runOnUiThread(() -> {
-                    Toast.makeText(requireContext(), "Classification failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    resetToCamera();
-                });
-            }
-        });
+    private void showProgress() {
+        progressBar.setVisibility(View.VISIBLE);
+        progressBar.animate().alpha(1f).setDuration(200).start();
+        previewView.setVisibility(View.GONE);
+        guideFrame.setVisibility(View.GONE);
+        imgThumbnail.setVisibility(View.GONE);
+        tvResult.setVisibility(View.GONE);
+        tvRemedy.setVisibility(View.GONE);
+        retakeButton.setVisibility(View.GONE);
+        captureButton.setEnabled(false);
+        uploadButton.setEnabled(false);
+        captureButton.setVisibility(View.GONE);
+        uploadButton.setVisibility(View.GONE);
     }
 
-    private Bitmap imageProxyToBitmap(androidx.camera.core.ImageProxy image) {
-        androidx.camera.core.ImageProxy.PlaneProxy planeProxy = image.getPlanes()[0];
-        java.nio.ByteBuffer buffer = planeProxy.getBuffer();
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+    private void showResult(ScanViewModel.ScanState state) {
+        Classification classification = state.classification;
+        if (state.duplicate && state.takeNotice()) {
+            Toast.makeText(requireContext(), "This image was scanned before, showing the saved result", Toast.LENGTH_SHORT).show();
+        }
+        // Rejected by the quality check or classification was not confident
+        boolean rejected = classification.isRejected();
+        int textColor = ContextCompat.getColor(requireContext(), rejected ? R.color.error_red : R.color.text_primary);
+        tvResult.setTextColor(textColor);
+        progressBar.animate().alpha(0f).setDuration(200).withEndAction(() -> progressBar.setVisibility(View.GONE)).start();
+        previewView.setVisibility(View.GONE);
+        guideFrame.setVisibility(View.GONE);
+        imgThumbnail.setImageBitmap(state.bitmap);
+        imgThumbnail.setVisibility(View.VISIBLE);
+        tvResult.setText(classification.getDisplayText());
+        if (state.leaves != null) {
+            StringBuilder text = new StringBuilder(classification.getDisplayText());
+            for (LeafResult leaf : state.leaves) {
+                text.append("\nLeaf ").append(leaf.leafIndex + 1).append(": ").append(leaf.disease != null
+                        ? String.format("%s - %.0f%% sure", leaf.disease, leaf.confidence * 100)
+                        : "uncertain");
+            }
+            tvResult.setText(text);
+        }
+        tvResult.setVisibility(View.VISIBLE);
+        if (rejected) {
+            tvRemedy.setVisibility(View.GONE);
+        } else {
+            tvRemedy.setText(getRemedy(classification.label));
+            tvRemedy.setVisibility(View.VISIBLE);
+        }
+        retakeButton.setVisibility(View.VISIBLE);
+        captureButton.setEnabled(true);
+        uploadButton.setEnabled(true);
+        captureButton.setVisibility(View.GONE);
+        uploadButton.setVisibility(View.GONE);
     }
 
     private String getRemedy(String disease) {
@@ -401,10 +569,11 @@ public class ScanFragment extends Fragment {
         retakeButton.setVisibility(View.GONE);
         progressBar.setVisibility(View.GONE);
         previewView.setVisibility(View.VISIBLE);
+        guideFrame.setVisibility(View.VISIBLE);
         captureButton.setEnabled(true);
         uploadButton.setEnabled(true);
         captureButton.setVisibility(View.VISIBLE);
-        uploadButton.setVisibility(View.VISIBLE);
+        uploadButton.setVisibility(survey != null ? View.GONE : View.VISIBLE);
     }
 
     @Override
@@ -422,10 +591,41 @@ public class ScanFragment extends Fragment {
     }
 
     @Override
-    public void onDestroy() {
-        super.onDestroy();
-        if (classifier != null) classifier.close();
-        if (executorService != null) executorService.shutdown();
-        if (db != null) db.close();
+    public void onStart() {
+        super.onStart();
+        // Warms up a location fix while the camera is open, if the user opted in
+        if (scanLocator != null) scanLocator.start();
+        // Reloads the model if it was released under memory pressure while the app was hidden
+        if (classifierLoader != null) classifierLoader.load();
+        boolean overlay = new AppSettings(requireContext()).isPerformanceOverlayEnabled();
+        tvPerformanceOverlay.setVisibility(overlay ? View.VISIBLE : View.GONE);
+        if (overlay) refreshOverlay();
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (scanLocator != null) scanLocator.stop();
+        overlayHandler.removeCallbacks(refreshOverlay);
+        // Commit queued scans before the app may be backgrounded and killed
+        if (scanWriter != null) scanWriter.flushAsync();
+    }
+
+    // Polled rather than observed, since pool metrics change with every task
+    private void refreshOverlay() {
+        StringBuilder text = new StringBuilder();
+        text.append(InferenceScheduler.getInstance(requireContext()).getStatus().getValue());
+        Classifier classifier = classifierLoader.getIfReady();
+        text.append("\nModel: ").append(classifier != null
+                ? classifier.getTier() + ", " + classifier.getPolicy().threads + " threads"
+                : classifierLoader.getState().toString());
+        if (captureProfile != null) text.append('\n').append(captureProfile.describe(requireContext()));
+        for (TaskDispatcher.PoolStats stats : TaskDispatcher.getInstance().allStats()) {
+            text.append('\n').append(stats);
+        }
+        text.append("\nReleasable memory: ")
+                .append(ResourceManager.getInstance(requireContext()).estimateBytes() / 1024).append(" KB");
+        tvPerformanceOverlay.setText(text);
+        overlayHandler.postDelayed(refreshOverlay, OVERLAY_REFRESH_MS);
     }
 }
\ No newline at end of file
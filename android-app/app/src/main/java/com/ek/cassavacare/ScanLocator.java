@@ -0,0 +1,117 @@
+/*
+ * Project: CassavaCare
+ * File: ScanLocator.java
+ * Description: Keeps a recent GPS or network fix while the scan screen is open, so scans can be
+ *              geotagged instantly without waiting for a location at capture time.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+public class ScanLocator implements LocationListener {
+    private static final String TAG = "ScanLocator";
+    private static final long UPDATE_INTERVAL_MS = 30_000;
+    private static final float UPDATE_DISTANCE_M = 10f;
+    // Older fixes are not attached to a scan; the farmer has likely moved fields
+    private static final long MAX_FIX_AGE_MS = 2 * 60_000;
+
+    private final Context context;
+    private final LocationManager locationManager;
+    private volatile Location lastFix;
+    private boolean started;
+
+    public ScanLocator(Context context) {
+        this.context = context.getApplicationContext();
+        this.locationManager = (LocationManager) this.context.getSystemService(Context.LOCATION_SERVICE);
+    }
+
+    public static boolean hasPermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /** Starts listening if geotagging is enabled and permitted; otherwise does nothing. */
+    @SuppressLint("MissingPermission")
+    public void start() {
+        if (started || locationManager == null || !new AppSettings(context).isGeotagEnabled() || !hasPermission(context)) {
+            return;
+        }
+        for (String provider : new String[]{LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER}) {
+            try {
+                if (!locationManager.isProviderEnabled(provider)) continue;
+                onLocationChanged(locationManager.getLastKnownLocation(provider));
+                locationManager.requestLocationUpdates(provider, UPDATE_INTERVAL_MS, UPDATE_DISTANCE_M, this,
+                        Looper.getMainLooper());
+                started = true;
+            } catch (IllegalArgumentException | SecurityException e) {
+                Log.w(TAG, "Location provider " + provider + " unavailable: " + e.getMessage());
+            }
+        }
+    }
+
+    public void stop() {
+        if (!started) return;
+        locationManager.removeUpdates(this);
+        started = false;
+    }
+
+    /** A fix from the last two minutes, or null. */
+    public Location current() {
+        Location fix = lastFix;
+        if (fix == null) return null;
+        long ageMs = (SystemClock.elapsedRealtimeNanos() - fix.getElapsedRealtimeNanos()) / 1_000_000;
+        return ageMs <= MAX_FIX_AGE_MS ? fix : null;
+    }
+
+    /** Tags the scan with the current fix, if there is one. */
+    public void tag(ScanResult scan) {
+        Location fix = current();
+        if (fix != null) scan.setLocation(fix.getLatitude(), fix.getLongitude());
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        if (location == null) return;
+        Location fix = lastFix;
+        // Prefer the newer fix unless it is much less accurate than a still-fresh one
+        if (fix == null || location.getElapsedRealtimeNanos() - fix.getElapsedRealtimeNanos() > 30_000_000_000L
+                || location.getAccuracy() <= fix.getAccuracy() * 2) {
+            lastFix = location;
+        }
+    }
+
+    // Still abstract on API levels before 29, so it must be implemented
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras) {
+    }
+
+    @Override
+    public void onProviderEnabled(@NonNull String provider) {
+    }
+
+    @Override
+    public void onProviderDisabled(@NonNull String provider) {
+    }
+}
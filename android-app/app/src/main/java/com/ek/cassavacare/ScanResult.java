@@ -2,7 +2,7 @@
  * Project: CassavaCare
  * File: ScanResult.java
  * Description: Entity class representing a scan result in the local Room database,
- *              including the disease result, timestamp, and optional captured image.
+ *              including the disease result, timestamp, optional captured image and optional location.
  *
  * Author: Emmanuel Kirui Barkacha
  * Email: ebarkacha@aimsammi.org
@@ -14,12 +14,32 @@
 
 package com.ek.cassavacare;
 
+import android.graphics.Bitmap;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
 
-@Entity(tableName = "scan_results")
+@Entity(tableName = "scan_results",
+        indices = {
+                // Filtering: disease equality, then timestamp range/order, confidence checked in the index
+                @Index(value = {"disease", "timestamp", "confidence"},
+                        name = "index_scan_results_disease_timestamp_confidence"),
+                @Index(value = {"timestamp", "confidence"},
+                        name = "index_scan_results_timestamp_confidence"),
+                @Index(value = {"content_hash"}, name = "index_scan_results_content_hash"),
+                // Spatial lookups are prefix ranges on geohash; disease makes cell counts index-only
+                @Index(value = {"geohash", "disease"}, name = "index_scan_results_geohash_disease")
+        })
 public class ScanResult {
+    private static final int THUMBNAIL_SIZE = 128;
+
     @PrimaryKey(autoGenerate = true)
     public int id;
     public String result;
@@ -28,9 +48,91 @@ public class ScanResult {
     @ColumnInfo(typeAffinity = ColumnInfo.BLOB)
     public byte[] image; // Add this
 
+    // Parsed out of result so history can be filtered through indices
+    public String disease;
+    @ColumnInfo(defaultValue = "0")
+    public float confidence;
+
+    // Small JPEG for the history list, so rows never load the full image
+    @ColumnInfo(typeAffinity = ColumnInfo.BLOB)
+    public byte[] thumbnail;
+
+    // Identifies the same scan across devices and backups; null for rows not yet backfilled
+    @ColumnInfo(name = "content_hash")
+    public Long contentHash;
+
+    // Optional GPS fix at scan time; all three are null for scans without a location
+    public Double latitude;
+    public Double longitude;
+    public String geohash;
+
+    // Per-leaf results for photos showing several leaves, inserted with the scan; null otherwise
+    @Ignore
+    public List<LeafResult> leaves;
+
     public ScanResult(String result, long timestamp, byte[] image) {
         this.result = result;
         this.timestamp = timestamp;
         this.image = image;
     }
+
+    /** Builds a history row for a confident classification, encoding the image and its thumbnail. */
+    public static ScanResult from(Classification classification, Bitmap bitmap, long timestamp) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 70, outputStream);
+
+        ScanResult scanResult = new ScanResult(classification.getDisplayText(), timestamp, outputStream.toByteArray());
+        scanResult.disease = classification.label;
+        scanResult.confidence = classification.confidence;
+        scanResult.thumbnail = encodeThumbnail(bitmap);
+        scanResult.contentHash = contentHash(scanResult.image, scanResult.result, timestamp);
+        return scanResult;
+    }
+
+    /** Attaches a position, storing its geohash for indexed spatial queries. */
+    public void setLocation(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.geohash = Geohash.encode(latitude, longitude, Geohash.STORED_PRECISION);
+    }
+
+    /** First 64 bits of the SHA-256 of the image, or of the timestamp and result for image-less rows. */
+    public static long contentHash(byte[] image, String result, long timestamp) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        if (image != null) {
+            digest.update(image);
+        } else {
+            digest.update((timestamp + "|" + result).getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] sha = digest.digest();
+        long hash = 0;
+        for (int i = 0; i < 8; i++) hash = (hash << 8) | (sha[i] & 0xFF);
+        return hash;
+    }
+
+    /** Thumbnail for an already encoded image, decoded at reduced size; null if it cannot be decoded. */
+    static byte[] thumbnailFromImage(byte[] image) {
+        Bitmap bitmap = BitmapLoader.decode(image, 0, THUMBNAIL_SIZE);
+        if (bitmap == null) return null;
+        byte[] thumbnail = encodeThumbnail(bitmap);
+        bitmap.recycle();
+        return thumbnail;
+    }
+
+    private static byte[] encodeThumbnail(Bitmap bitmap) {
+        float scale = THUMBNAIL_SIZE / (float) Math.max(bitmap.getWidth(), bitmap.getHeight());
+        Bitmap small = scale < 1f
+                ? Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                        Math.max(1, Math.round(bitmap.getHeight() * scale)), true)
+                : bitmap;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        small.compress(Bitmap.CompressFormat.JPEG, 80, outputStream);
+        if (small != bitmap) small.recycle();
+        return outputStream.toByteArray();
+    }
 }
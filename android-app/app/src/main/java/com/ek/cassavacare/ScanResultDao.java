@@ -2,7 +2,9 @@
  * Project: CassavaCare
  * File: ScanResultDao.java
  * Description: Data Access Object (DAO) for ScanResult entity, providing methods
- *              to insert new scan results and retrieve all scan results ordered by timestamp.
+ *              to insert new scan results (singly or in batches), retrieve all scan results
+ *              ordered by timestamp, filter history by disease, confidence and date range,
+ *              and page through rows for export and backup restore.
  *
  * Author: Emmanuel Kirui Barkacha
  * Email: ebarkacha@aimsammi.org
@@ -14,16 +16,188 @@
 
 package com.ek.cassavacare;
 
+import android.database.Cursor;
+import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
+import java.util.ArrayList;
 import java.util.List;
 
 @Dao
 public interface ScanResultDao {
+    // Shared with the query plan tests, which assert these stay index range scans with no sort.
+    // Only the list columns are read; older rows get their thumbnail from ThumbnailBackfill
+    String SUMMARY_COLUMNS = "SELECT id, result, disease, confidence, timestamp, thumbnail FROM scan_results ";
+    String FILTER_ALL_DISEASES = SUMMARY_COLUMNS
+            + "WHERE timestamp BETWEEN :from AND :to AND confidence >= :minConfidence "
+            + "ORDER BY timestamp DESC LIMIT :limit";
+    String FILTER_BY_DISEASE = SUMMARY_COLUMNS
+            + "WHERE disease = :disease AND timestamp BETWEEN :from AND :to AND confidence >= :minConfidence "
+            + "ORDER BY timestamp DESC LIMIT :limit";
+
     @Insert
     void insert(ScanResult scanResult);
 
+    // Room runs a list insert as a single transaction
+    @Insert
+    List<Long> insertAll(List<ScanResult> scanResults);
+
+    @Insert
+    void insertLeaves(List<LeafResult> leaves);
+
+    @Query("SELECT * FROM leaf_results WHERE scan_id = :scanId ORDER BY leaf_index")
+    List<LeafResult> getLeaves(int scanId);
+
+    /**
+     * Inserts scans with their per-leaf results and adds them to the day and week rollups in the
+     * same transaction.
+     */
+    @Transaction
+    default void insertWithRollups(List<ScanResult> scanResults) {
+        List<Long> ids = insertAll(scanResults);
+        List<LeafResult> leaves = new ArrayList<>();
+        for (int i = 0; i < scanResults.size(); i++) {
+            ScanResult scan = scanResults.get(i);
+            if (scan.leaves == null) continue;
+            for (LeafResult leaf : scan.leaves) {
+                leaf.scanId = ids.get(i).intValue();
+                leaves.add(leaf);
+            }
+        }
+        if (!leaves.isEmpty()) insertLeaves(leaves);
+        for (ScanResult scan : scanResults) {
+            String disease = scan.disease != null ? scan.disease : "Unknown";
+            for (int period : new int[]{ScanRollup.PERIOD_DAY, ScanRollup.PERIOD_WEEK}) {
+                long bucket = ScanRollup.bucketStart(period, scan.timestamp);
+                createRollup(period, bucket, disease);
+                incrementRollup(period, bucket, disease);
+            }
+        }
+    }
+
+    // Two statements instead of an upsert, which needs a newer SQLite than minSdk ships
+    @Query("INSERT OR IGNORE INTO scan_rollups (period, bucket_start, disease, count) "
+            + "VALUES (:period, :bucketStart, :disease, 0)")
+    void createRollup(int period, long bucketStart, String disease);
+
+    @Query("UPDATE scan_rollups SET count = count + 1 "
+            + "WHERE period = :period AND bucket_start = :bucketStart AND disease = :disease")
+    void incrementRollup(int period, long bucketStart, String disease);
+
+    // Full recompute, for bulk loads that bypass the per-insert rollup path
+    String ROLLUP_DAYS = "INSERT INTO scan_rollups (period, bucket_start, disease, count) "
+            + "SELECT 0, (timestamp / 86400000) * 86400000 AS bucket, COALESCE(disease, 'Unknown') AS label, "
+            + "COUNT(*) FROM scan_results GROUP BY bucket, label";
+    String ROLLUP_WEEKS = "INSERT INTO scan_rollups (period, bucket_start, disease, count) "
+            + "SELECT 1, ((timestamp / 86400000 + 3) / 7 * 7 - 3) * 86400000 AS bucket, "
+            + "COALESCE(disease, 'Unknown') AS label, COUNT(*) FROM scan_results GROUP BY bucket, label";
+
+    @Query("DELETE FROM scan_rollups")
+    void clearRollups();
+
+    @Query(ROLLUP_DAYS)
+    void rollUpDays();
+
+    @Query(ROLLUP_WEEKS)
+    void rollUpWeeks();
+
+    @Transaction
+    default void rebuildRollups() {
+        clearRollups();
+        rollUpDays();
+        rollUpWeeks();
+    }
+
+    @Query("SELECT * FROM scan_rollups WHERE period = :period ORDER BY bucket_start")
+    LiveData<List<ScanRollup>> observeRollups(int period);
+
+    // Spatial queries: every lookup is a range [prefix, Geohash.rangeEnd(prefix)) on the geohash
+    // index. Shared with the query plan tests
+    String IN_GEOHASH_RANGE = "SELECT id, latitude, longitude, disease, timestamp FROM scan_results "
+            + "WHERE geohash >= :prefix AND geohash < :end";
+    String GEOHASH_CELL_COUNTS = "SELECT substr(geohash, 1, :precision) AS cell, COUNT(*) AS total, "
+            + "SUM(disease IS NOT NULL AND disease != 'Healthy') AS diseased FROM scan_results "
+            + "WHERE geohash >= :prefix AND geohash < :end GROUP BY cell";
+
+    @Query(IN_GEOHASH_RANGE)
+    List<GeoScan> inGeohashRange(String prefix, String end);
+
+    @Query(GEOHASH_CELL_COUNTS)
+    List<GeoCellCount> cellCounts(String prefix, String end, int precision);
+
+    @Query("SELECT id, latitude, longitude, disease, timestamp FROM scan_results "
+            + "WHERE geohash IS NOT NULL ORDER BY timestamp DESC LIMIT 1")
+    GeoScan latestGeotagged();
+
+    // Changes whenever a geotagged scan is added; counted on the geohash index
+    @Query("SELECT COUNT(*) FROM scan_results WHERE geohash IS NOT NULL")
+    LiveData<Integer> observeGeotaggedCount();
+
+    @Query("SELECT COUNT(*) FROM scan_results WHERE timestamp = :timestamp AND result = :result")
+    int countMatching(long timestamp, String result);
+
     @Query("SELECT * FROM scan_results ORDER BY timestamp DESC")
     List<ScanResult> getAll();
+
+    @Query(FILTER_ALL_DISEASES)
+    List<ScanSummary> filter(long from, long to, float minConfidence, int limit);
+
+    @Query(FILTER_BY_DISEASE)
+    List<ScanSummary> filterByDisease(String disease, long from, long to, float minConfidence, int limit);
+
+    // Observable variants: Room's InvalidationTracker re-runs them whenever scan_results changes
+    @Query(FILTER_ALL_DISEASES)
+    LiveData<List<ScanSummary>> observeFilter(long from, long to, float minConfidence, int limit);
+
+    @Query(FILTER_BY_DISEASE)
+    LiveData<List<ScanSummary>> observeFilterByDisease(String disease, long from, long to, float minConfidence, int limit);
+
+    @Query("SELECT * FROM scan_results WHERE id = :id")
+    ScanResult getById(int id);
+
+    // Dashboard aggregates; both are found through the indices rather than by scanning the image rows
+    @Query(SUMMARY_COLUMNS + "ORDER BY timestamp DESC LIMIT 1")
+    LiveData<ScanSummary> observeMostRecent();
+
+    @Query("SELECT COALESCE(disease, 'Unknown') AS disease, COUNT(*) AS count FROM scan_results "
+            + "GROUP BY disease ORDER BY disease")
+    LiveData<List<DiseaseCount>> observeDiseaseCounts();
+
+    // Export pages are keyed on id, so each page is a short indexed query and never an OFFSET scan
+    @Query("SELECT COALESCE(MAX(id), 0) FROM scan_results")
+    int maxId();
+
+    @Query("SELECT COUNT(*) FROM scan_results WHERE id <= :maxId")
+    int countUpTo(int maxId);
+
+    @Query("SELECT COUNT(*) FROM scan_results WHERE id <= :maxId AND image IS NOT NULL")
+    int countImagesUpTo(int maxId);
+
+    @Query("SELECT id, result, disease, confidence, timestamp, image IS NOT NULL AS has_image, "
+            + "latitude, longitude FROM scan_results WHERE id > :afterId AND id <= :maxId ORDER BY id LIMIT :limit")
+    Cursor metadataPage(int afterId, int maxId, int limit);
+
+    @Query("SELECT id, image FROM scan_results "
+            + "WHERE id > :afterId AND id <= :maxId AND image IS NOT NULL ORDER BY id LIMIT :limit")
+    Cursor imagePage(int afterId, int maxId, int limit);
+
+    // Content hashes, for deduplicating restored backups
+    @Query("SELECT content_hash FROM scan_results WHERE content_hash IN (:hashes)")
+    List<Long> existingHashes(List<Long> hashes);
+
+    @Query("SELECT id, result, timestamp, image FROM scan_results WHERE content_hash IS NULL LIMIT :limit")
+    Cursor unhashedPage(int limit);
+
+    @Query("UPDATE scan_results SET content_hash = :hash WHERE id = :id")
+    void setContentHash(int id, long hash);
+
+    // Rows saved before thumbnails existed
+    @Query("SELECT id, image FROM scan_results WHERE id > :afterId AND thumbnail IS NULL AND image IS NOT NULL "
+            + "ORDER BY id LIMIT :limit")
+    Cursor unthumbnailedPage(int afterId, int limit);
+
+    @Query("UPDATE scan_results SET thumbnail = :thumbnail WHERE id = :id")
+    void setThumbnail(int id, byte[] thumbnail);
 }
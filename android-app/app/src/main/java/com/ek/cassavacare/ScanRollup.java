@@ -0,0 +1,43 @@
+/*
+ * Project: CassavaCare
+ * File: ScanRollup.java
+ * Description: Entity holding the number of scans per disease in one day or week bucket, kept up to
+ *              date as scans are inserted so trend charts never aggregate the full history.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+@Entity(tableName = "scan_rollups", primaryKeys = {"period", "bucket_start", "disease"})
+public class ScanRollup {
+    public static final int PERIOD_DAY = 0;
+    public static final int PERIOD_WEEK = 1;
+    public static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    public int period;
+    @ColumnInfo(name = "bucket_start")
+    public long bucketStart;
+    @NonNull
+    public String disease = "";
+    public int count;
+
+    /** Start of the UTC day or Monday-based UTC week containing timestamp. */
+    public static long bucketStart(int period, long timestamp) {
+        long day = Math.floorDiv(timestamp, DAY_MS);
+        if (period == PERIOD_WEEK) {
+            // Epoch day 0 was a Thursday
+            day = Math.floorDiv(day + 3, 7) * 7 - 3;
+        }
+        return day * DAY_MS;
+    }
+}
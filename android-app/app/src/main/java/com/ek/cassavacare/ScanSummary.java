@@ -0,0 +1,23 @@
+/*
+ * Project: CassavaCare
+ * File: ScanSummary.java
+ * Description: Projection of a scan result with only the columns the history list displays.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+public class ScanSummary {
+    public int id;
+    public String result;
+    public String disease;
+    public float confidence;
+    public long timestamp;
+    public byte[] thumbnail;
+}
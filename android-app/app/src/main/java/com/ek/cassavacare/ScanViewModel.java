@@ -0,0 +1,680 @@
+/*
+ * Project: CassavaCare
+ * File: ScanViewModel.java
+ * Description: Activity-scoped owner of the classifier and of the scan in progress, so a capture
+ *              keeps running through rotation or a tab switch and its result is shown again by
+ *              whichever scan screen is on display when it finishes.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.location.Location;
+import android.net.Uri;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageProxy;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ScanViewModel extends AndroidViewModel {
+    private static final String TAG = "ScanViewModel";
+
+    /** What the scan screen shows; the latest state is delivered again to every new view. */
+    public static class ScanState {
+        public enum Phase { IDLE, PROCESSING, RESULT, FAILED }
+
+        static final ScanState IDLE = new ScanState(Phase.IDLE, null, null, false, null, 0);
+        static final ScanState PROCESSING = new ScanState(Phase.PROCESSING, null, null, false, null, 0);
+
+        public final Phase phase;
+        public final Bitmap bitmap;
+        public final Classification classification;
+        // The image had been classified before, so the saved result is shown and nothing is stored
+        public final boolean duplicate;
+        public final String message;
+        // One result per leaf when the photo showed several, largest leaf first; null otherwise
+        public final List<LeafResult> leaves;
+        final long imageHash;
+        private boolean noticeTaken;
+
+        ScanState(Phase phase, Bitmap bitmap, Classification classification, boolean duplicate, String message,
+                  long imageHash) {
+            this(phase, bitmap, classification, duplicate, message, imageHash, null);
+        }
+
+        ScanState(Phase phase, Bitmap bitmap, Classification classification, boolean duplicate, String message,
+                  long imageHash, List<LeafResult> leaves) {
+            this.phase = phase;
+            this.bitmap = bitmap;
+            this.classification = classification;
+            this.duplicate = duplicate;
+            this.message = message;
+            this.imageHash = imageHash;
+            this.leaves = leaves;
+        }
+
+        static ScanState failed(String message) {
+            return new ScanState(Phase.FAILED, null, null, false, message, 0);
+        }
+
+        /** True only the first time, so one-off toasts are not repeated when the view is recreated. */
+        public synchronized boolean takeNotice() {
+            boolean first = !noticeTaken;
+            noticeTaken = true;
+            return first;
+        }
+    }
+
+    /** Running totals of a survey; each update is a new snapshot. */
+    public static class SurveyTally {
+        public final int captured;
+        // Shots still being decoded or classified
+        public final int pending;
+        public final int rejected;
+        // Per label, in the order of Classifier.LABELS
+        public final Map<String, Integer> counts;
+        public final long startedAt;
+        public final boolean finishing;
+        private final AtomicBoolean summaryShown;
+
+        private SurveyTally(Builder builder) {
+            captured = builder.captured;
+            pending = builder.pending;
+            rejected = builder.rejected;
+            counts = new LinkedHashMap<>(builder.counts);
+            startedAt = builder.startedAt;
+            finishing = builder.finishing;
+            summaryShown = builder.summaryShown;
+        }
+
+        /** All shots are accounted for after Finish was pressed. */
+        public boolean isComplete() {
+            return finishing && pending == 0;
+        }
+
+        /** True only the first time, so a recreated view does not show the summary again. */
+        public boolean takeSummary() {
+            return isComplete() && summaryShown.compareAndSet(false, true);
+        }
+
+        static class Builder {
+            final int id;
+            int captured;
+            int pending;
+            int rejected;
+            final Map<String, Integer> counts = new LinkedHashMap<>();
+            final long startedAt = System.currentTimeMillis();
+            boolean finishing;
+            final AtomicBoolean summaryShown = new AtomicBoolean();
+
+            Builder(int id) {
+                this.id = id;
+                for (String label : Classifier.LABELS) counts.put(label, 0);
+            }
+
+            SurveyTally build() {
+                return new SurveyTally(this);
+            }
+        }
+    }
+
+    /** Progress of a bulk import; each update is a new snapshot. */
+    public static class BulkProgress {
+        public final int done;
+        public final int total;
+        public final int saved;
+        public final int rejected;
+        // Already in the history, so not saved again
+        public final int duplicates;
+        // Could not be analysed and are retried when the import is resumed
+        public final int failed;
+        public final boolean finished;
+        public final boolean cancelled;
+        private final AtomicBoolean noticeTaken = new AtomicBoolean();
+
+        BulkProgress(int done, int total, int saved, int rejected, int duplicates, int failed, boolean finished,
+                     boolean cancelled) {
+            this.done = done;
+            this.total = total;
+            this.saved = saved;
+            this.rejected = rejected;
+            this.duplicates = duplicates;
+            this.failed = failed;
+            this.finished = finished;
+            this.cancelled = cancelled;
+        }
+
+        /** True only the first time after the import finished, so a recreated view does not repeat the toast. */
+        public boolean takeNotice() {
+            return finished && noticeTaken.compareAndSet(false, true);
+        }
+    }
+
+    // Leaves classified separately per photo; all of them go through one batched model call
+    private static final int MAX_LEAVES = 4;
+
+    private final MutableLiveData<ScanState> state = new MutableLiveData<>(ScanState.IDLE);
+    private final MutableLiveData<SurveyTally> surveyTally = new MutableLiveData<>(null);
+    private final MutableLiveData<BulkProgress> bulkProgress = new MutableLiveData<>(null);
+    private final ClassifierLoader classifierLoader;
+    private final PredictionCache predictionCache;
+    private final ScanWriter scanWriter;
+    // Guarded by this. The generation changes on reset, so a job that was overtaken never posts
+    private TaskDispatcher.Task<?> decodeJob;
+    private TaskDispatcher.Task<?> inferenceJob;
+    private Long inFlightHash;
+    private ScanState lastResult;
+    private int generation;
+    private SurveyTally.Builder survey;
+    private int surveyCount;
+    // Main thread only. Owned here rather than by the screen, so an import survives rotation
+    private BulkImportPipeline bulkImport;
+    private boolean bulkImportStarting;
+
+    public ScanViewModel(@NonNull Application application) {
+        super(application);
+        classifierLoader = new ClassifierLoader(application);
+        predictionCache = new PredictionCache(AppDatabase.getInstance(application));
+        scanWriter = ScanWriter.getInstance(application);
+        classifierLoader.load();
+    }
+
+    public LiveData<ScanState> getState() {
+        return state;
+    }
+
+    public ClassifierLoader getClassifierLoader() {
+        return classifierLoader;
+    }
+
+    /** Shows progress from the moment the shutter is pressed; call on the main thread. */
+    public void startCapture() {
+        state.setValue(ScanState.PROCESSING);
+    }
+
+    /**
+     * Runs capture callbacks right away on the camera's thread, outside any screen's lifecycle.
+     * They only hand the frame to a decode task, so they are never cancelled or dropped themselves.
+     */
+    public Executor captureExecutor() {
+        return Runnable::run;
+    }
+
+    /**
+     * Decodes and classifies a camera frame, cropped to guide when given; location is the fix at
+     * capture time, or null.
+     */
+    public void analyzeCapture(ImageProxy image, RectF guide, Location location) {
+        int jobGeneration;
+        synchronized (this) {
+            jobGeneration = generation;
+        }
+        int targetSize = decodeTargetSize(true);
+        trackDecode(submitFrame(image, () -> {
+            Bitmap bitmap = decodeCapture(image, guide, targetSize);
+            if (bitmap == null) {
+                state.postValue(ScanState.failed("Failed to load image"));
+                return;
+            }
+            analyze(bitmap, location, false);
+        }, () -> publish(ScanState.failed("Too busy to process the photo, please try again."), jobGeneration)));
+    }
+
+    public void captureFailed(String message) {
+        state.postValue(ScanState.failed(message));
+    }
+
+    /** Decodes a picked image and classifies it; gallery images are not geotagged. */
+    public void analyzeUri(Uri uri) {
+        state.setValue(ScanState.PROCESSING);
+        int targetSize = decodeTargetSize(true);
+        trackDecode(TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DECODE, TaskDispatcher.Priority.USER, () -> {
+            try {
+                Bitmap bitmap = BitmapLoader.decode(getApplication(), uri, targetSize);
+                if (bitmap != null) {
+                    analyze(bitmap, null, true);
+                } else {
+                    state.postValue(ScanState.failed("Failed to load image"));
+                }
+            } catch (IOException | SecurityException e) {
+                Log.e(TAG, "Failed to decode " + uri + ": " + e.getMessage());
+                state.postValue(ScanState.failed("Error loading image"));
+            }
+        }));
+    }
+
+    /** Starts a survey: shots are classified and saved in the background while the user keeps shooting. */
+    public void startSurvey() {
+        synchronized (this) {
+            survey = new SurveyTally.Builder(++surveyCount);
+        }
+        postSurvey();
+    }
+
+    /** False while the pipeline is full; the shutter should wait rather than pile up frames. */
+    public synchronized boolean canTakeSurveyShot() {
+        return survey != null && !survey.finishing && survey.pending < surveyMaxPending();
+    }
+
+    /**
+     * Shots allowed in the pipeline at once; each holds a decoded bitmap until classified, and a
+     * hot device takes fewer so the shutter slows down with the classifier.
+     */
+    public int surveyMaxPending() {
+        return InferenceScheduler.getInstance(getApplication()).getPolicy().surveyMaxPending;
+    }
+
+    /**
+     * Counts a shutter press and returns the id to pass along with the frame; call on the main
+     * thread before taking the picture.
+     */
+    public int surveyShotTaken() {
+        int id;
+        synchronized (this) {
+            if (survey == null) return -1;
+            survey.captured++;
+            survey.pending++;
+            id = survey.id;
+        }
+        postSurvey();
+        return id;
+    }
+
+    /**
+     * Decodes the frame on the decode pool while the previous frame may still be classifying on the
+     * inference pool and the one before that being written by the scan writer. Survey frames are
+     * never cancelled; one dropped by a full pool counts as failed, so every shot is accounted for.
+     */
+    public void analyzeSurveyFrame(int surveyId, ImageProxy image, RectF guide, Location location) {
+        submitFrame(image, () -> decodeSurveyFrame(surveyId, image, guide, location),
+                () -> surveyFrameDone(surveyId, null));
+    }
+
+    private void decodeSurveyFrame(int surveyId, ImageProxy image, RectF guide, Location location) {
+        Bitmap bitmap = null;
+        try {
+            bitmap = decodeCapture(image, guide, decodeTargetSize(false));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Survey frame decode failed: " + e.getMessage());
+        }
+        if (bitmap == null) {
+            surveyFrameDone(surveyId, null);
+            return;
+        }
+        long imageHash = ImageHash.dHash(bitmap);
+        Bitmap frame = bitmap;
+        classifierLoader.whenReady(new ClassifierLoader.Callback() {
+            @Override
+            public void onReady(Classifier classifier) {
+                TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.INFERENCE, TaskDispatcher.Priority.USER, () -> {
+                    ScanState result = null;
+                    try {
+                        result = analyzeAndStore(classifier, frame, imageHash, location, false, false);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Survey frame failed: " + e.getMessage());
+                    }
+                    surveyFrameDone(surveyId, result);
+                });
+            }
+
+            @Override
+            public void onFailed(String message) {
+                surveyFrameDone(surveyId, null);
+            }
+        });
+    }
+
+    public void surveyShotFailed(int surveyId) {
+        surveyFrameDone(surveyId, null);
+    }
+
+    /** Ends the survey; the summary is published once the frames still in the pipeline are done. */
+    public void finishSurvey() {
+        synchronized (this) {
+            if (survey == null) return;
+            survey.finishing = true;
+        }
+        postSurvey();
+    }
+
+    /** Leaves survey mode after the summary has been shown. */
+    public void closeSurvey() {
+        synchronized (this) {
+            survey = null;
+        }
+        postSurvey();
+    }
+
+    public LiveData<SurveyTally> getSurvey() {
+        return surveyTally;
+    }
+
+    private void surveyFrameDone(int surveyId, ScanState result) {
+        synchronized (this) {
+            // Frames of a survey that was already closed are not counted in a newer one
+            if (survey == null || survey.id != surveyId) return;
+            survey.pending--;
+            if (result == null || result.classification.isRejected()) {
+                survey.rejected++;
+            } else {
+                Integer count = survey.counts.get(result.classification.label);
+                survey.counts.put(result.classification.label, count == null ? 1 : count + 1);
+            }
+        }
+        postSurvey();
+    }
+
+    private void postSurvey() {
+        SurveyTally tally;
+        synchronized (this) {
+            tally = survey != null ? survey.build() : null;
+        }
+        surveyTally.postValue(tally);
+    }
+
+    /**
+     * Imports many gallery images in the background once the model is ready; call on the main
+     * thread. Does nothing while another import is running.
+     */
+    public void startBulkImport(List<Uri> uris) {
+        startBulkImport(uris.size(), 0, classifier -> BulkImportPipeline.start(getApplication(), classifier, uris, bulkListener));
+    }
+
+    /** Continues the unfinished import from where it stopped; call on the main thread. */
+    public void resumeBulkImport() {
+        startBulkImport(BulkImportPipeline.pendingUris(getApplication()).size(), BulkImportPipeline.pendingDone(getApplication()),
+                classifier -> BulkImportPipeline.resume(getApplication(), classifier, bulkListener));
+    }
+
+    /** Stops the import after the images in flight; it stays on disk and can be resumed. */
+    public void cancelBulkImport() {
+        if (bulkImport != null) bulkImport.cancel();
+    }
+
+    public boolean isBulkImportRunning() {
+        return bulkImport != null || bulkImportStarting;
+    }
+
+    public LiveData<BulkProgress> getBulkProgress() {
+        return bulkProgress;
+    }
+
+    private interface BulkImportStarter {
+        BulkImportPipeline start(Classifier classifier);
+    }
+
+    private void startBulkImport(int total, int done, BulkImportStarter starter) {
+        if (isBulkImportRunning()) return;
+        bulkImportStarting = true;
+        bulkProgress.setValue(new BulkProgress(done, total, 0, 0, 0, 0, false, false));
+        classifierLoader.whenReady(new ClassifierLoader.Callback() {
+            @Override
+            public void onReady(Classifier classifier) {
+                TaskDispatcher.getInstance().postToMain(() -> {
+                    if (!bulkImportStarting) return; // Cleared in the meantime
+                    bulkImportStarting = false;
+                    // Keeps the model loaded for the whole import
+                    classifierLoader.retain();
+                    bulkImport = starter.start(classifier);
+                });
+            }
+
+            @Override
+            public void onFailed(String message) {
+                TaskDispatcher.getInstance().postToMain(() -> {
+                    bulkImportStarting = false;
+                    bulkProgress.setValue(new BulkProgress(done, total, 0, 0, 0, 0, true, true));
+                });
+            }
+        });
+    }
+
+    private final BulkImportPipeline.Listener bulkListener = new BulkImportPipeline.Listener() {
+        @Override
+        public void onProgress(int done, int total, int saved, int rejected, int duplicates, int failed) {
+            bulkProgress.setValue(new BulkProgress(done, total, saved, rejected, duplicates, failed, false, false));
+        }
+
+        @Override
+        public void onFinished(boolean cancelled, int saved, int rejected, int duplicates, int failed) {
+            BulkProgress last = bulkProgress.getValue();
+            bulkImport = null;
+            classifierLoader.unretain();
+            bulkProgress.setValue(new BulkProgress(last != null ? last.done : 0, last != null ? last.total : 0,
+                    saved, rejected, duplicates, failed, true, cancelled));
+        }
+    };
+
+    /** Back to the camera; call on the main thread. */
+    public void reset() {
+        synchronized (this) {
+            // First, so a capture cancelled here does not report itself as failed
+            generation++;
+            cancelJobs(false);
+        }
+        state.setValue(ScanState.IDLE);
+    }
+
+    // reupload is true for gallery images, which may be a photo already in the history; a camera
+    // capture is always a new photo, however closely it resembles an earlier one
+    private void analyze(Bitmap bitmap, Location location, boolean reupload) {
+        long imageHash = ImageHash.dHash(bitmap);
+        int jobGeneration;
+        synchronized (this) {
+            // The same image again: the running job will answer, or the last result is shown again
+            if (reupload && inFlightHash != null && inFlightHash == imageHash) return;
+            if (reupload && lastResult != null && lastResult.imageHash == imageHash) {
+                state.postValue(lastResult);
+                return;
+            }
+            inFlightHash = imageHash;
+            jobGeneration = generation;
+        }
+        state.postValue(ScanState.PROCESSING);
+        // Queued until the model is ready if it is still loading
+        classifierLoader.whenReady(new ClassifierLoader.Callback() {
+            @Override
+            public void onReady(Classifier classifier) {
+                TaskDispatcher.Task<Void> task = TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.INFERENCE,
+                        TaskDispatcher.Priority.USER, () -> classify(classifier, bitmap, imageHash, location, reupload, jobGeneration));
+                synchronized (ScanViewModel.this) {
+                    inferenceJob = task;
+                }
+            }
+
+            @Override
+            public void onFailed(String message) {
+                Log.e(TAG, "Classifier not initialized: " + message);
+                publish(ScanState.failed(message + ", please try again."), jobGeneration);
+            }
+        });
+    }
+
+    private void classify(Classifier classifier, Bitmap bitmap, long imageHash, Location location, boolean reupload,
+                          int jobGeneration) {
+        try {
+            ScanState result = analyzeAndStore(classifier, bitmap, imageHash, location, true, reupload);
+            synchronized (this) {
+                lastResult = result;
+            }
+            publish(result, jobGeneration);
+        } catch (Exception e) {
+            Log.e(TAG, "Classification failed: " + e.getMessage());
+            publish(ScanState.failed("Classification failed: " + e.getMessage()), jobGeneration);
+        }
+    }
+
+    // Shared by single scans and survey frames; runs on the inference pool. Survey frames are
+    // never tiled, since the point of a survey is throughput. Only reuploads are matched against
+    // the cache: similar leaves shot in the same field would otherwise share one diagnosis
+    private ScanState analyzeAndStore(Classifier classifier, Bitmap bitmap, long imageHash, Location location,
+                                      boolean allowTiles, boolean reupload) {
+        boolean tiled = allowTiles && isTiledEnabled();
+        String cacheKey = tiled ? TiledAnalyzer.cacheKey(classifier) : classifier.getCacheKey();
+        // Only stored scans are cached, so a hit is a near-identical photo already in the history
+        float[] cached = reupload ? predictionCache.lookup(imageHash, cacheKey) : null;
+        boolean duplicate = cached != null;
+        Classification classification;
+        TiledAnalyzer.TileMap tileMap = null;
+        if (duplicate) {
+            classification = classifier.interpret(cached);
+        } else if (tiled) {
+            ImageQualityCheck.Report quality = ImageQualityCheck.check(bitmap);
+            if (quality.isAcceptable()) {
+                TiledAnalyzer.Result tiles = analyzeTiles(classifier, bitmap);
+                classification = tiles.classification;
+                tileMap = tiles.map;
+            } else {
+                classification = Classification.rejected(quality.rejection.message, null);
+            }
+        } else {
+            classification = classifier.analyze(bitmap);
+        }
+        // The tile map already covers the whole photo, so leaves are only split out without it
+        List<LeafResult> leaves = !tiled && !duplicate && !classification.isRejected() && extraPassesAllowed()
+                ? analyzeLeaves(classifier, bitmap)
+                : null;
+        // Photos are decoded large for cropping and tiling; history keeps them at the usual size
+        bitmap = scaleShorterSide(bitmap, classifier.getResizeTarget());
+
+        // Rejected images and duplicates already in the history are not stored. Low-confidence
+        // results stay out of the cache too, so a rescan after lowering the threshold is stored
+        if (!classification.isRejected() && !duplicate) {
+            predictionCache.store(imageHash, cacheKey, classification.probabilities);
+            ScanResult scanResult = ScanResult.from(classification, bitmap, System.currentTimeMillis());
+            if (location != null) scanResult.setLocation(location.getLatitude(), location.getLongitude());
+            scanResult.leaves = leaves;
+            scanWriter.enqueue(scanResult);
+        }
+
+        Bitmap shown = tileMap != null ? tileMap.render(bitmap) : bitmap;
+        if (leaves != null) shown = LeafLocator.render(bitmap, leaves);
+        return new ScanState(ScanState.Phase.RESULT, shown, classification, duplicate, null, imageHash, leaves);
+    }
+
+    // Null for photos with a single leaf, whose result is the image result
+    private static List<LeafResult> analyzeLeaves(Classifier classifier, Bitmap bitmap) {
+        List<Rect> boxes = LeafLocator.locateAll(bitmap, classifier.getInputWidth(), classifier.getInputHeight(), MAX_LEAVES);
+        if (boxes.size() < 2) return null;
+        List<Classification> results = classifier.analyzeLeaves(bitmap, boxes);
+        List<LeafResult> leaves = new ArrayList<>();
+        for (int i = 0; i < boxes.size(); i++) {
+            leaves.add(LeafResult.from(i, boxes.get(i), bitmap.getWidth(), bitmap.getHeight(), results.get(i)));
+        }
+        return leaves;
+    }
+
+    private static TiledAnalyzer.Result analyzeTiles(Classifier classifier, Bitmap bitmap) {
+        try {
+            return TiledAnalyzer.analyze(classifier, bitmap);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tiled analysis was interrupted", e);
+        }
+    }
+
+    private static Bitmap scaleShorterSide(Bitmap bitmap, int size) {
+        float scale = size / (float) Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (scale >= 1f) return bitmap;
+        return Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * scale),
+                Math.round(bitmap.getHeight() * scale), true);
+    }
+
+    private boolean isTiledEnabled() {
+        return extraPassesAllowed() && new AppSettings(getApplication()).isTiledAnalysisEnabled();
+    }
+
+    // Off while the device is hot or saving battery
+    private boolean extraPassesAllowed() {
+        return InferenceScheduler.getInstance(getApplication()).getPolicy().extraPasses;
+    }
+
+    // guide is the on-screen guide frame as a fraction of the preview, or null for the whole frame
+    private Bitmap decodeCapture(ImageProxy image, RectF guide, int targetSize) {
+        try {
+            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            int rotation = image.getImageInfo().getRotationDegrees();
+            Rect crop = guide != null ? CaptureProfile.guideCrop(image.getCropRect(), guide, rotation) : null;
+            return BitmapLoader.decode(bytes, crop, rotation, targetSize);
+        } finally {
+            image.close();
+        }
+    }
+
+    // Scans keep the capture's headroom for the leaf crop, and tiled analysis needs more still;
+    // survey frames stay at the resize target so the burst keeps up
+    private int decodeTargetSize(boolean fullScan) {
+        Classifier classifier = classifierLoader.getIfReady();
+        int size = classifier != null ? classifier.getResizeTarget() : BitmapLoader.DEFAULT_TARGET_SIZE;
+        if (!fullScan) return size;
+        return size * (isTiledEnabled() ? TiledAnalyzer.DECODE_SCALE : CaptureProfile.HEADROOM);
+    }
+
+    private synchronized void publish(ScanState result, int jobGeneration) {
+        // A stale job must not clear the guard of the newer job now in flight
+        if (jobGeneration != generation) return;
+        inFlightHash = null;
+        state.postValue(result);
+    }
+
+    // The frame must be closed exactly once: by decode when the task runs, otherwise here, where a
+    // task cancelled or dropped before it started closes it and calls onDropped instead
+    private static TaskDispatcher.Task<Void> submitFrame(ImageProxy image, Runnable decode, Runnable onDropped) {
+        AtomicBoolean claimed = new AtomicBoolean();
+        TaskDispatcher.Task<Void> task = TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DECODE,
+                TaskDispatcher.Priority.USER, () -> {
+                    if (claimed.compareAndSet(false, true)) decode.run();
+                });
+        task.whenDone(() -> {
+            if (!claimed.compareAndSet(false, true)) return;
+            image.close();
+            onDropped.run();
+        });
+        return task;
+    }
+
+    private synchronized void trackDecode(TaskDispatcher.Task<?> task) {
+        decodeJob = task;
+    }
+
+    private void cancelJobs(boolean interrupt) {
+        if (decodeJob != null) decodeJob.cancel(interrupt);
+        if (inferenceJob != null) inferenceJob.cancel(interrupt);
+        decodeJob = null;
+        inferenceJob = null;
+        inFlightHash = null;
+    }
+
+    @Override
+    protected void onCleared() {
+        synchronized (this) {
+            cancelJobs(true);
+        }
+        // The job stays on disk and is offered for resume next time
+        bulkImportStarting = false;
+        if (bulkImport != null) bulkImport.cancel();
+        classifierLoader.close();
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Project: CassavaCare
+ * File: ScanWriter.java
+ * Description: Write-behind persistence queue for scan results. Inserts are journaled, then
+ *              coalesced into batched transactions on a dedicated writer thread.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ScanWriter {
+    private static final String TAG = "ScanWriter";
+    private static final int BATCH_SIZE = 16;
+    private static final long FLUSH_DELAY_MS = 2000;
+    // A failed commit is retried after FLUSH_DELAY_MS, doubling up to this
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+    // Journals start with MAGIC and the record layout version. Layouts, oldest first: 0 result,
+    // time and image; 1 adds disease, confidence and thumbnail; 2 adds the location; 3 adds the
+    // per-leaf results. MAGIC cannot start a headerless journal, whose first short is a string length
+    private static final int MAGIC = 0x43434A4C;
+    private static final int FORMAT_VERSION = 3;
+    private static final String JOURNAL_FILE = "scan_journal_v3.bin";
+    // Journals rotated out for a commit, one per rotation with a sequence number appended
+    private static final String FLUSHING_PREFIX = "scan_journal_v3.flushing";
+    // Headerless journals of older builds, still replayed: the v2 files always used layout 3,
+    // the first files went through layouts 0 to 2 and are told apart when read
+    private static final String V2_PREFIX = "scan_journal_v2.";
+    private static final String[] V1_FILES = {"scan_journal.flushing", "scan_journal.bin"};
+    private static final int[] V1_LAYOUTS = {2, 1, 0};
+
+    private static volatile ScanWriter instance;
+
+    private final AppDatabase db;
+    private final File dir;
+    private final File journal;
+    private final File[] v1Journals;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "scan-writer");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    // Guarded by this
+    private final List<ScanResult> pending = new ArrayList<>();
+    private DataOutputStream journalOut;
+    private ScheduledFuture<?> scheduledFlush;
+    private int rotation;
+    // Rotated journals whose scans went back into pending after a failed commit
+    private final List<File> retryFiles = new ArrayList<>();
+    // Delay before the next retry of a failed commit; 0 while commits succeed
+    private long retryDelayMs;
+
+    private ScanWriter(Context context) {
+        db = AppDatabase.getInstance(context);
+        dir = context.getFilesDir();
+        journal = new File(dir, JOURNAL_FILE);
+        // Never reuse the name of a rotated journal left behind by an earlier process
+        for (File file : journalsStartingWith(FLUSHING_PREFIX)) rotation = Math.max(rotation, rotationOf(file));
+        v1Journals = new File[V1_FILES.length];
+        for (int i = 0; i < v1Journals.length; i++) v1Journals[i] = new File(dir, V1_FILES[i]);
+        // Anything journaled by a previous process that never reached the database
+        writer.execute(this::recover);
+    }
+
+    public static ScanWriter getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ScanWriter.class) {
+                if (instance == null) instance = new ScanWriter(context.getApplicationContext());
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a scan for insertion. Once this returns the scan is in the journal, so it survives
+     * the process being killed before the batch is committed.
+     */
+    public synchronized void enqueue(ScanResult scanResult) {
+        try {
+            openJournal();
+            writeRecord(journalOut, scanResult);
+            // Reaching the kernel is enough to survive process death; no fsync per scan
+            journalOut.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to journal scan, it will only be held in memory: " + e.getMessage());
+        }
+        pending.add(scanResult);
+
+        // While commits fail, the scheduled retry is left to back off
+        if (pending.size() >= BATCH_SIZE && retryDelayMs == 0) {
+            flushAsync();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = writer.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Commits everything queued so far without waiting, e.g. when the screen stops. */
+    public synchronized void flushAsync() {
+        if (scheduledFlush != null) scheduledFlush.cancel(false);
+        scheduledFlush = null;
+        writer.execute(this::flush);
+    }
+
+    // Writer thread only
+    private void flush() {
+        List<ScanResult> batch;
+        List<File> batchFiles;
+        boolean rotated;
+        synchronized (this) {
+            scheduledFlush = null;
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            // Rotate the journal so scans queued during the commit land in a fresh file. Each
+            // rotation gets its own file, so a commit only deletes the journals of its own batch
+            batchFiles = new ArrayList<>(retryFiles);
+            retryFiles.clear();
+            closeJournal();
+            File rotatedFile = new File(dir, FLUSHING_PREFIX + "." + (++rotation));
+            rotated = true;
+            if (journal.exists()) {
+                if (journal.renameTo(rotatedFile)) {
+                    batchFiles.add(rotatedFile);
+                } else {
+                    // The scans stay in the live journal and are deduplicated when replayed
+                    Log.w(TAG, "Failed to rotate journal");
+                    rotated = false;
+                }
+            }
+        }
+
+        try {
+            db.scanResultDao().insertWithRollups(batch);
+            for (File file : batchFiles) {
+                if (!file.delete()) Log.w(TAG, "Failed to delete flushed journal " + file.getName());
+            }
+            synchronized (this) {
+                retryDelayMs = 0;
+                // Committed scans left in an unrotated journal are dropped, so it cannot keep growing
+                if (!rotated) rewriteJournal();
+            }
+            Log.d(TAG, "Committed " + batch.size() + " scans");
+        } catch (RuntimeException e) {
+            // Still journaled; the scans go back to the front of the queue and are retried with backoff
+            synchronized (this) {
+                pending.addAll(0, batch);
+                retryFiles.addAll(batchFiles);
+                retryDelayMs = retryDelayMs == 0 ? FLUSH_DELAY_MS : Math.min(2 * retryDelayMs, MAX_RETRY_DELAY_MS);
+                Log.e(TAG, "Batch insert failed, retrying in " + retryDelayMs + " ms: " + e.getMessage());
+                if (scheduledFlush == null) {
+                    scheduledFlush = writer.schedule(this::flush, retryDelayMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    // Oldest rotation first
+    private List<File> journalsStartingWith(String prefix) {
+        List<File> files = new ArrayList<>();
+        File[] all = dir.listFiles();
+        if (all == null) return files;
+        for (File file : all) {
+            if (file.getName().startsWith(prefix)) files.add(file);
+        }
+        Collections.sort(files, (a, b) -> Integer.compare(rotationOf(a), rotationOf(b)));
+        return files;
+    }
+
+    // The sequence number after the last dot, or 0 for a live or unnumbered journal
+    private static int rotationOf(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(name.lastIndexOf('.') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Writer thread only, before any flush
+    private void recover() {
+        List<ScanResult> recovered = new ArrayList<>();
+        for (File file : v1Journals) readJournal(file, recovered, V1_LAYOUTS);
+        List<File> older = journalsStartingWith(V2_PREFIX);
+        for (File file : older) readJournal(file, recovered, 3);
+        List<File> rotated = journalsStartingWith(FLUSHING_PREFIX);
+        for (File file : rotated) readJournal(file, recovered);
+        synchronized (this) {
+            closeJournal();
+            readJournal(journal, recovered);
+            // Scans queued since startup are already pending and get flushed normally
+            for (ScanResult scan : pending) {
+                for (int i = recovered.size() - 1; i >= 0; i--) {
+                    ScanResult candidate = recovered.get(i);
+                    if (candidate.timestamp == scan.timestamp && candidate.result.equals(scan.result)) {
+                        recovered.remove(i);
+                        break;
+                    }
+                }
+            }
+        }
+        if (recovered.isEmpty()) return;
+
+        // A crash between commit and journal deletion would otherwise duplicate rows
+        List<ScanResult> missing = new ArrayList<>();
+        for (ScanResult scan : recovered) {
+            if (db.scanResultDao().countMatching(scan.timestamp, scan.result) == 0) missing.add(scan);
+        }
+        try {
+            if (!missing.isEmpty()) db.scanResultDao().insertWithRollups(missing);
+            synchronized (this) {
+                for (File file : v1Journals) file.delete();
+                for (File file : older) file.delete();
+                for (File file : rotated) file.delete();
+                rewriteJournal();
+            }
+            Log.d(TAG, "Recovered " + missing.size() + " of " + recovered.size() + " journaled scans");
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Journal recovery failed: " + e.getMessage());
+        }
+    }
+
+    // Called under the lock: starts a clean journal holding only the scans that are still pending
+    private void rewriteJournal() {
+        closeJournal();
+        if (journal.exists() && !journal.delete()) {
+            Log.w(TAG, "Failed to clear journal");
+            return;
+        }
+        try {
+            openJournal();
+            for (ScanResult scan : pending) writeRecord(journalOut, scan);
+            journalOut.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to re-journal scans: " + e.getMessage());
+        }
+    }
+
+    // Called under the lock; a new journal starts with the format header
+    private void openJournal() throws IOException {
+        if (journalOut != null) return;
+        boolean fresh = journal.length() == 0;
+        journalOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal, true)));
+        if (fresh) {
+            journalOut.writeInt(MAGIC);
+            journalOut.writeByte(FORMAT_VERSION);
+        }
+    }
+
+    private void closeJournal() {
+        if (journalOut == null) return;
+        try {
+            journalOut.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close journal: " + e.getMessage());
+        }
+        journalOut = null;
+    }
+
+    private static void writeRecord(DataOutputStream out, ScanResult scan) throws IOException {
+        out.writeUTF(scan.result);
+        out.writeLong(scan.timestamp);
+        out.writeUTF(scan.disease != null ? scan.disease : "");
+        out.writeFloat(scan.confidence);
+        writeBytes(out, scan.image);
+        writeBytes(out, scan.thumbnail);
+        out.writeBoolean(scan.geohash != null);
+        if (scan.geohash != null) {
+            out.writeDouble(scan.latitude);
+            out.writeDouble(scan.longitude);
+        }
+        int leafCount = scan.leaves != null ? scan.leaves.size() : 0;
+        out.writeInt(leafCount);
+        for (int i = 0; i < leafCount; i++) {
+            LeafResult leaf = scan.leaves.get(i);
+            out.writeInt(leaf.leafIndex);
+            out.writeFloat(leaf.left);
+            out.writeFloat(leaf.top);
+            out.writeFloat(leaf.right);
+            out.writeFloat(leaf.bottom);
+            out.writeUTF(leaf.disease != null ? leaf.disease : "");
+            out.writeFloat(leaf.confidence);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    // A length past the end of the file means the record was read with the wrong layout
+    private static byte[] readBytes(DataInputStream in, long maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        if (length > maxLength) throw new IOException("Bad record length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Replays the scans of a journal. A versioned journal names its layout; a headerless one from
+     * an older build is read with the first of headerlessLayouts that parses it to the end, or the
+     * first of them when none does. A record cut short by process death is simply dropped.
+     */
+    private static void readJournal(File file, List<ScanResult> into, int... headerlessLayouts) {
+        // Too short for a header or a whole record
+        if (!file.exists() || file.length() < 5) return;
+        int layout = -1;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() == MAGIC) layout = in.readUnsignedByte();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read journal " + file.getName() + ": " + e.getMessage());
+            return;
+        }
+        if (layout > FORMAT_VERSION) {
+            Log.e(TAG, "Journal " + file.getName() + " is from a newer version, skipping it");
+            return;
+        }
+        if (layout >= 0) {
+            readRecords(file, 5, layout, into);
+            return;
+        }
+        if (headerlessLayouts.length == 0) {
+            Log.e(TAG, "Journal " + file.getName() + " has no header, skipping it");
+            return;
+        }
+        List<ScanResult> fallback = null;
+        for (int candidate : headerlessLayouts) {
+            List<ScanResult> scans = new ArrayList<>();
+            if (readRecords(file, 0, candidate, scans)) {
+                into.addAll(scans);
+                return;
+            }
+            if (fallback == null) fallback = scans;
+        }
+        into.addAll(fallback);
+    }
+
+    // True when the file ends exactly after a whole record
+    private static boolean readRecords(File file, int offset, int layout, List<ScanResult> into) {
+        long maxLength = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            in.skipBytes(offset);
+            while (true) {
+                String result;
+                try {
+                    result = in.readUTF();
+                } catch (EOFException e) {
+                    return true; // End of journal
+                }
+                long timestamp = in.readLong();
+                String disease = layout >= 1 ? in.readUTF() : "";
+                float confidence = layout >= 1 ? in.readFloat() : 0f;
+                ScanResult scan = new ScanResult(result, timestamp, readBytes(in, maxLength));
+                scan.disease = disease.isEmpty() ? null : disease;
+                scan.confidence = confidence;
+                if (layout >= 1) scan.thumbnail = readBytes(in, maxLength);
+                if (layout >= 2 && in.readBoolean()) scan.setLocation(in.readDouble(), in.readDouble());
+                int leafCount = layout >= 3 ? in.readInt() : 0;
+                if (leafCount < 0 || leafCount > maxLength) throw new IOException("Bad leaf count " + leafCount);
+                if (leafCount > 0) scan.leaves = new ArrayList<>();
+                for (int i = 0; i < leafCount; i++) {
+                    int leafIndex = in.readInt();
+                    float left = in.readFloat();
+                    float top = in.readFloat();
+                    float right = in.readFloat();
+                    float bottom = in.readFloat();
+                    String leafDisease = in.readUTF();
+                    float leafConfidence = in.readFloat();
+                    scan.leaves.add(new LeafResult(leafIndex, left, top, right, bottom,
+                            leafDisease.isEmpty() ? null : leafDisease, leafConfidence));
+                }
+                scan.contentHash = ScanResult.contentHash(scan.image, scan.result, scan.timestamp);
+                into.add(scan);
+            }
+        } catch (EOFException e) {
+            return false; // Last record cut short
+        } catch (IOException e) {
+            Log.w(TAG, "Journal " + file.getName() + " does not parse as layout " + layout + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
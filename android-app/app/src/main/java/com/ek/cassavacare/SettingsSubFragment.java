@@ -0,0 +1,199 @@
+/*
+ * Project: CassavaCare
+ * File: SettingsSubFragment.java
+ * Description: Fragment exposing app settings such as the model tier used for scanning.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.Manifest;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.RadioButton;
+import android.widget.RadioGroup;
+import android.widget.SeekBar;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
+import androidx.appcompat.widget.SwitchCompat;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import com.ek.cassavacare.R;
+
+import java.util.List;
+import java.util.Map;
+
+public class SettingsSubFragment extends Fragment {
+    // Seek bars are offset so their 0 position maps to a 50% threshold
+    private static final int THRESHOLD_OFFSET = 50;
+    private AppSettings settings;
+    private RadioGroup rgModelTier;
+    private TextView tvBenchmarkSummary;
+    private Button btnRunBenchmark;
+    private SwitchCompat switchGeotag;
+    private ActivityResultLauncher<String[]> locationPermissionLauncher;
+    private TaskDispatcher.Scope tasks;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View root = inflater.inflate(R.layout.fragment_settings_sub, container, false);
+
+        settings = new AppSettings(requireContext());
+        tasks = TaskDispatcher.getInstance().scope(this);
+        rgModelTier = root.findViewById(R.id.rg_model_tier);
+        tvBenchmarkSummary = root.findViewById(R.id.tv_benchmark_summary);
+        btnRunBenchmark = root.findViewById(R.id.btn_run_benchmark);
+
+        // One option per bundled model variant
+        List<ModelTier> tiers = ModelTier.available(requireContext());
+        for (ModelTier tier : tiers) {
+            RadioButton option = new RadioButton(requireContext());
+            option.setId(View.generateViewId());
+            option.setTag(tier);
+            option.setText(tier.label);
+            option.setTextColor(getResources().getColor(R.color.text_primary, null));
+            rgModelTier.addView(option);
+        }
+        showSelectedTier();
+
+        rgModelTier.setOnCheckedChangeListener((group, checkedId) -> {
+            RadioButton option = group.findViewById(checkedId);
+            if (option == null || option.getTag() == settings.getModelTier()) return;
+            settings.setModelTier((ModelTier) option.getTag());
+            reloadClassifier();
+        });
+
+        btnRunBenchmark.setOnClickListener(v -> runBenchmark());
+
+        // Cascade thresholds, read at each scan; the gate model itself is loaded with the classifier
+        SwitchCompat switchGate = root.findViewById(R.id.switch_gate);
+        boolean gateBundled = GateModel.isBundled(requireContext());
+        switchGate.setChecked(gateBundled && settings.isGateEnabled());
+        switchGate.setEnabled(gateBundled);
+        switchGate.setOnCheckedChangeListener((button, checked) -> {
+            settings.setGateEnabled(checked);
+            reloadClassifier();
+        });
+
+        TextView tvGateThreshold = root.findViewById(R.id.tv_gate_threshold);
+        SeekBar seekGateThreshold = root.findViewById(R.id.seek_gate_threshold);
+        bindThreshold(seekGateThreshold, tvGateThreshold, "Healthy exit threshold",
+                settings.getGateThreshold(), settings::setGateThreshold);
+        seekGateThreshold.setEnabled(gateBundled);
+
+        TextView tvMinConfidence = root.findViewById(R.id.tv_min_confidence);
+        SeekBar seekMinConfidence = root.findViewById(R.id.seek_min_confidence);
+        bindThreshold(seekMinConfidence, tvMinConfidence, "Minimum confidence",
+                settings.getMinConfidence(), settings::setMinConfidence);
+
+        // Read at each scan, so it applies right away
+        SwitchCompat switchTiled = root.findViewById(R.id.switch_tiled);
+        switchTiled.setChecked(settings.isTiledAnalysisEnabled());
+        switchTiled.setOnCheckedChangeListener((button, checked) -> settings.setTiledAnalysisEnabled(checked));
+
+        // Geotagging is opt-in and only stays on once location permission is granted
+        switchGeotag = root.findViewById(R.id.switch_geotag);
+        locationPermissionLauncher = registerForActivityResult(
+                new ActivityResultContracts.RequestMultiplePermissions(), this::onLocationPermissionResult);
+        switchGeotag.setChecked(settings.isGeotagEnabled() && ScanLocator.hasPermission(requireContext()));
+        switchGeotag.setOnCheckedChangeListener((button, checked) -> {
+            if (checked && !ScanLocator.hasPermission(requireContext())) {
+                locationPermissionLauncher.launch(new String[]{
+                        Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.ACCESS_COARSE_LOCATION});
+                return;
+            }
+            settings.setGeotagEnabled(checked);
+        });
+
+        SwitchCompat switchOverlay = root.findViewById(R.id.switch_performance_overlay);
+        switchOverlay.setChecked(settings.isPerformanceOverlayEnabled());
+        switchOverlay.setOnCheckedChangeListener((button, checked) -> settings.setPerformanceOverlayEnabled(checked));
+
+        return root;
+    }
+
+    private void onLocationPermissionResult(Map<String, Boolean> grants) {
+        boolean granted = grants.containsValue(true);
+        settings.setGeotagEnabled(granted);
+        if (!isAdded()) return;
+        if (!granted) {
+            switchGeotag.setChecked(false);
+            Toast.makeText(requireContext(), "Location permission denied", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private interface ThresholdSetter {
+        void set(float value);
+    }
+
+    private void bindThreshold(SeekBar seekBar, TextView label, String title, float value, ThresholdSetter setter) {
+        int percent = Math.round(value * 100);
+        seekBar.setProgress(percent - THRESHOLD_OFFSET);
+        label.setText(title + ": " + percent + "%");
+        seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar bar, int progress, boolean fromUser) {
+                label.setText(title + ": " + (progress + THRESHOLD_OFFSET) + "%");
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar bar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar bar) {
+                setter.set((bar.getProgress() + THRESHOLD_OFFSET) / 100f);
+            }
+        });
+    }
+
+    private void runBenchmark() {
+        btnRunBenchmark.setEnabled(false);
+        tvBenchmarkSummary.setText("Benchmarking...");
+        Context appContext = requireContext().getApplicationContext();
+        tasks.submit(TaskDispatcher.Pool.INFERENCE, TaskDispatcher.Priority.USER, () -> {
+            DeviceBenchmark.run(appContext);
+            // The fragment may be gone by now, so only touch it from the main thread
+            mainHandler.post(() -> {
+                if (!isAdded()) return;
+                btnRunBenchmark.setEnabled(true);
+                showSelectedTier();
+                reloadClassifier();
+            });
+        });
+    }
+
+    // The scan screen's classifier is shared through the activity, so it picks up the new model now
+    private void reloadClassifier() {
+        ClassifierLoader loader = new ViewModelProvider(requireActivity()).get(ScanViewModel.class).getClassifierLoader();
+        if (!loader.reload()) {
+            Toast.makeText(requireContext(), "Model change applies once the current import finishes",
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void showSelectedTier() {
+        ModelTier selected = ModelTier.resolve(requireContext(), settings.getModelTier());
+        for (int i = 0; i < rgModelTier.getChildCount(); i++) {
+            View option = rgModelTier.getChildAt(i);
+            if (option.getTag() == selected) rgModelTier.check(option.getId());
+        }
+        String summary = settings.getBenchmarkSummary();
+        tvBenchmarkSummary.setText(summary.isEmpty() ? "Not benchmarked yet" : "Last benchmark: " + summary);
+    }
+}
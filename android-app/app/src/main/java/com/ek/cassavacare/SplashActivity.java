@@ -37,16 +37,21 @@ public class SplashActivity extends AppCompatActivity {
         });
 
         // Run heavy stuff in background
-        new Thread(() -> {
+        TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.INFERENCE, TaskDispatcher.Priority.USER, () -> {
             // Heavy initialization
             //loadModel();
             //preloadData();
 
+            // Pick the model tier for this device once, on first launch
+            if (!new AppSettings(this).isBenchmarkDone()) {
+                DeviceBenchmark.run(getApplicationContext());
+            }
+
             // After done, go to main on UI thread
             runOnUiThread(() -> {
                 startActivity(new Intent(SplashActivity.this, MainActivity.class));
                 finish();
             });
-        }).start();
+        });
     }
 }
\ No newline at end of file
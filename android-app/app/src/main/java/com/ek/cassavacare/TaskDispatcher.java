@@ -0,0 +1,349 @@
+/*
+ * Project: CassavaCare
+ * File: TaskDispatcher.java
+ * Description: Application-wide background work dispatcher with named thread pools, priority
+ *              ordering within each pool, bounded queues, lifecycle-scoped cancellation and
+ *              per-pool queue depth and latency metrics.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TaskDispatcher {
+    private static final String TAG = "TaskDispatcher";
+    private static volatile TaskDispatcher instance;
+
+    public enum Pool {
+        // Model work; a single thread, since the interpreters are not used concurrently
+        INFERENCE(1, 16, Process.THREAD_PRIORITY_DEFAULT),
+        DISK_IO(2, 64, Process.THREAD_PRIORITY_BACKGROUND),
+        DECODE(2, 16, Process.THREAD_PRIORITY_DEFAULT),
+        ANALYTICS(1, 16, Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+
+        final int threads;
+        final int queueCapacity;
+        final int threadPriority;
+
+        Pool(int threads, int queueCapacity, int threadPriority) {
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+            this.threadPriority = threadPriority;
+        }
+    }
+
+    /** Within a pool, USER tasks always run before queued BACKGROUND tasks. */
+    public enum Priority { USER, BACKGROUND }
+
+    /** A submitted unit of work; a FutureTask, so callers can wait on or cancel it. */
+    public static class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+        private final PoolState pool;
+        final Priority priority;
+        private final long sequence;
+        private final long enqueuedAt = SystemClock.elapsedRealtimeNanos();
+        private Scope scope;
+        // Guarded by this
+        private Runnable listener;
+
+        Task(PoolState pool, Priority priority, long sequence, Callable<T> work) {
+            super(work);
+            this.pool = pool;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            // A task cancelled while queued is skipped by FutureTask and does not count as a run
+            if (isDone()) return;
+            long start = SystemClock.elapsedRealtimeNanos();
+            pool.recordWait(start - enqueuedAt);
+            super.run();
+            pool.recordRun(SystemClock.elapsedRealtimeNanos() - start);
+        }
+
+        /**
+         * Runs listener once the task has finished, failed or been cancelled, including when the
+         * pool drops it; right away on the calling thread if that already happened.
+         */
+        public void whenDone(Runnable listener) {
+            synchronized (this) {
+                if (!isDone()) {
+                    this.listener = listener;
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        @Override
+        protected void done() {
+            if (scope != null) scope.tasks.remove(this);
+            Runnable doneListener;
+            synchronized (this) {
+                doneListener = listener;
+                listener = null;
+            }
+            if (doneListener != null) doneListener.run();
+            if (isCancelled()) {
+                // Frees the queue slot now instead of when the task reaches the head
+                pool.executor.remove(this);
+                return;
+            }
+            try {
+                get();
+            } catch (ExecutionException e) {
+                // Runnable work has nobody to rethrow to, so failures are at least logged
+                Log.e(TAG, pool.pool + " task failed", e.getCause());
+            } catch (InterruptedException | CancellationException e) {
+                // Not reachable once done
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /** Point-in-time metrics for one pool. */
+    public static class PoolStats {
+        public final Pool pool;
+        public final int queueDepth;
+        public final int active;
+        public final long completed;
+        public final long rejected;
+        public final double avgWaitMs;
+        public final double maxWaitMs;
+        public final double avgRunMs;
+
+        PoolStats(PoolState state) {
+            pool = state.pool;
+            queueDepth = state.executor.getQueue().size();
+            active = state.executor.getActiveCount();
+            completed = state.completed.get();
+            rejected = state.rejected.get();
+            avgWaitMs = completed > 0 ? state.totalWaitNanos.get() / 1e6 / completed : 0;
+            maxWaitMs = state.maxWaitNanos.get() / 1e6;
+            avgRunMs = completed > 0 ? state.totalRunNanos.get() / 1e6 / completed : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: queued %d, active %d, done %d, rejected %d, wait %.1f/%.1f ms, run %.1f ms",
+                    pool, queueDepth, active, completed, rejected, avgWaitMs, maxWaitMs, avgRunMs);
+        }
+    }
+
+    static class PoolState {
+        final Pool pool;
+        final ThreadPoolExecutor executor;
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong totalRunNanos = new AtomicLong();
+
+        PoolState(Pool pool) {
+            this.pool = pool;
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory factory = runnable -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(pool.threadPriority);
+                    runnable.run();
+                }, "cassava-" + pool.name().toLowerCase(Locale.US) + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            // The queue itself is unbounded so it can order by priority; submit() enforces the bound
+            executor = new ThreadPoolExecutor(pool.threads, pool.threads, 30, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<>(), factory);
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        void recordWait(long nanos) {
+            totalWaitNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos)) {
+                // Retry until the maximum sticks
+            }
+        }
+
+        void recordRun(long nanos) {
+            totalRunNanos.addAndGet(nanos);
+            completed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Tasks tied to a lifecycle: everything still queued or running is cancelled when the owner
+     * is destroyed, so work never outlives the screen that asked for it.
+     */
+    public class Scope {
+        final Set<Task<?>> tasks = ConcurrentHashMap.newKeySet();
+        private volatile boolean closed;
+
+        public <T> Task<T> submit(Pool pool, Priority priority, Callable<T> work) {
+            Task<T> task = TaskDispatcher.this.newTask(pool, priority, work);
+            task.scope = this;
+            tasks.add(task);
+            if (closed) {
+                task.cancel(false);
+                return task;
+            }
+            enqueue(task);
+            return task;
+        }
+
+        public Task<Void> submit(Pool pool, Priority priority, Runnable work) {
+            return submit(pool, priority, Executors.callable(work, null));
+        }
+
+        /** An Executor view of this scope, for APIs such as CameraX that take one. */
+        public Executor executor(Pool pool, Priority priority) {
+            return work -> submit(pool, priority, work);
+        }
+
+        public void cancelAll() {
+            for (Task<?> task : new ArrayList<>(tasks)) task.cancel(true);
+        }
+
+        void close() {
+            closed = true;
+            cancelAll();
+        }
+    }
+
+    private final Map<Pool, PoolState> pools = new EnumMap<>(Pool.class);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private TaskDispatcher() {
+        for (Pool pool : Pool.values()) pools.put(pool, new PoolState(pool));
+    }
+
+    public static TaskDispatcher getInstance() {
+        if (instance == null) {
+            synchronized (TaskDispatcher.class) {
+                if (instance == null) instance = new TaskDispatcher();
+            }
+        }
+        return instance;
+    }
+
+    /** Work not tied to any screen, e.g. app-wide jobs that manage their own cancellation. */
+    public <T> Task<T> submit(Pool pool, Priority priority, Callable<T> work) {
+        Task<T> task = newTask(pool, priority, work);
+        enqueue(task);
+        return task;
+    }
+
+    public Task<Void> submit(Pool pool, Priority priority, Runnable work) {
+        return submit(pool, priority, Executors.callable(work, null));
+    }
+
+    /** A scope cancelled when owner is destroyed; call on the main thread. */
+    public Scope scope(LifecycleOwner owner) {
+        Scope scope = new Scope();
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            scope.close();
+            return scope;
+        }
+        lifecycle.addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    source.getLifecycle().removeObserver(this);
+                    scope.close();
+                }
+            }
+        });
+        return scope;
+    }
+
+    /** Runs on the main thread, for handing results back to views. */
+    public void postToMain(Runnable work) {
+        mainHandler.post(work);
+    }
+
+    public PoolStats stats(Pool pool) {
+        return new PoolStats(pools.get(pool));
+    }
+
+    public List<PoolStats> allStats() {
+        List<PoolStats> stats = new ArrayList<>();
+        for (Pool pool : Pool.values()) stats.add(stats(pool));
+        return stats;
+    }
+
+    private <T> Task<T> newTask(Pool pool, Priority priority, Callable<T> work) {
+        return new Task<>(pools.get(pool), priority, sequence.incrementAndGet(), work);
+    }
+
+    // Bounded admission: a full queue makes room for user work by dropping the newest background
+    // task, and rejects background work outright
+    private void enqueue(Task<?> task) {
+        PoolState state = task.pool;
+        synchronized (state) {
+            if (state.executor.getQueue().size() >= state.pool.queueCapacity) {
+                Task<?> victim = task.priority == Priority.USER ? newestBackgroundTask(state) : null;
+                if (victim == null) {
+                    state.rejected.incrementAndGet();
+                    Log.w(TAG, state.pool + " queue full, rejecting " + task.priority + " task");
+                    task.cancel(false);
+                    return;
+                }
+                state.rejected.incrementAndGet();
+                victim.cancel(false);
+            }
+            state.executor.execute(task);
+        }
+    }
+
+    private static Task<?> newestBackgroundTask(PoolState state) {
+        Task<?> newest = null;
+        for (Runnable queued : state.executor.getQueue()) {
+            Task<?> task = (Task<?>) queued;
+            if (task.priority == Priority.BACKGROUND && (newest == null || task.sequence > newest.sequence)) {
+                newest = task;
+            }
+        }
+        return newest;
+    }
+}
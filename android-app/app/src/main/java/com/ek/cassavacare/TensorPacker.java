@@ -0,0 +1,167 @@
+/*
+ * Project: CassavaCare
+ * File: TensorPacker.java
+ * Description: Packs a model-sized bitmap into the interpreter's float input tensor, using the
+ *              shape and layout (NCHW planar or NHWC interleaved) read from the model itself.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.graphics.Bitmap;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+public class TensorPacker {
+    public enum Layout { NCHW, NHWC }
+
+    private static final float[] MEAN = {0.485f, 0.456f, 0.406f};
+    private static final float[] STD = {0.229f, 0.224f, 0.225f};
+    private static final int CHANNELS = 3;
+
+    // Normalized value for every 8-bit channel intensity, so packing is a table lookup per pixel
+    private static final float[][] NORMALIZE_LUT = new float[CHANNELS][256];
+    static {
+        for (int c = 0; c < CHANNELS; c++) {
+            for (int v = 0; v < 256; v++) {
+                NORMALIZE_LUT[c][v] = (v / 255.0f - MEAN[c]) / STD[c];
+            }
+        }
+    }
+
+    private final Layout layout;
+    private final int width;
+    private final int height;
+    private final ByteBuffer buffer;
+    private final FloatBuffer[] planes;
+    private final FloatBuffer interleaved;
+    private final int[] pixels;
+    private final float[] scratch;
+
+    public TensorPacker(Layout layout, int width, int height) {
+        this.layout = layout;
+        this.width = width;
+        this.height = height;
+        int area = width * height;
+
+        buffer = ByteBuffer.allocateDirect(area * CHANNELS * 4);
+        buffer.order(ByteOrder.nativeOrder());
+        FloatBuffer floats = buffer.asFloatBuffer();
+
+        if (layout == Layout.NCHW) {
+            // One view per channel plane: R, G and B are written as three contiguous bulk puts
+            planes = new FloatBuffer[CHANNELS];
+            for (int c = 0; c < CHANNELS; c++) {
+                floats.position(c * area);
+                floats.limit((c + 1) * area);
+                planes[c] = floats.slice();
+                floats.clear();
+            }
+            interleaved = null;
+            scratch = new float[area];
+        } else {
+            planes = null;
+            interleaved = floats;
+            scratch = new float[area * CHANNELS];
+        }
+        pixels = new int[area];
+    }
+
+    /**
+     * Reads the shape of the interpreter's first input tensor and builds a packer for it.
+     * Fails loudly on shapes we cannot feed instead of silently packing the wrong layout.
+     */
+    public static TensorPacker forInput(Interpreter interpreter) throws IOException {
+        Tensor input = interpreter.getInputTensor(0);
+        int[] shape = input.shape();
+        if (input.dataType() != DataType.FLOAT32) {
+            throw new IOException("Unsupported model input type: " + input.dataType());
+        }
+        if (shape.length != 4) {
+            throw new IOException("Unsupported model input shape: " + Arrays.toString(shape));
+        }
+        if (shape[1] == CHANNELS && shape[3] != CHANNELS) {
+            return new TensorPacker(Layout.NCHW, shape[3], shape[2]);
+        }
+        if (shape[3] == CHANNELS) {
+            return new TensorPacker(Layout.NHWC, shape[2], shape[1]);
+        }
+        throw new IOException("Unsupported model input shape: " + Arrays.toString(shape));
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** True when both packers produce byte-identical tensors for the same bitmap. */
+    public boolean isCompatibleWith(TensorPacker other) {
+        return other != null && layout == other.layout && width == other.width && height == other.height;
+    }
+
+    /**
+     * Packs a bitmap of exactly getWidth() x getHeight() into the reusable input buffer.
+     * The returned buffer is owned by this packer and is overwritten by the next call.
+     */
+    public ByteBuffer pack(Bitmap bitmap) {
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            throw new IllegalArgumentException("Expected " + width + "x" + height + " input, got "
+                    + bitmap.getWidth() + "x" + bitmap.getHeight());
+        }
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (layout == Layout.NCHW) {
+            packPlanar();
+        } else {
+            packInterleaved();
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    private void packPlanar() {
+        int area = pixels.length;
+        for (int c = 0; c < CHANNELS; c++) {
+            float[] lut = NORMALIZE_LUT[c];
+            int shift = 16 - 8 * c;
+            for (int i = 0; i < area; i++) {
+                scratch[i] = lut[(pixels[i] >> shift) & 0xFF];
+            }
+            FloatBuffer plane = planes[c];
+            plane.clear();
+            plane.put(scratch, 0, area);
+        }
+    }
+
+    private void packInterleaved() {
+        float[] lutR = NORMALIZE_LUT[0];
+        float[] lutG = NORMALIZE_LUT[1];
+        float[] lutB = NORMALIZE_LUT[2];
+        int j = 0;
+        for (int pixel : pixels) {
+            scratch[j++] = lutR[(pixel >> 16) & 0xFF];
+            scratch[j++] = lutG[(pixel >> 8) & 0xFF];
+            scratch[j++] = lutB[pixel & 0xFF];
+        }
+        interleaved.clear();
+        interleaved.put(scratch, 0, scratch.length);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Project: CassavaCare
+ * File: ThumbnailBackfill.java
+ * Description: One-off background job that gives scans saved before thumbnails existed a
+ *              thumbnail, so the history list never has to fall back to full-size images.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ThumbnailBackfill {
+    private static final String TAG = "ThumbnailBackfill";
+    // Full images per page, few enough to fit one cursor window
+    private static final int PAGE = 8;
+    private static final AtomicBoolean started = new AtomicBoolean();
+
+    /** Starts the backfill in the background, once per process, until it has completed. */
+    public static void runIfNeeded(Context context) {
+        AppSettings settings = new AppSettings(context);
+        if (settings.isThumbnailBackfillDone() || !started.compareAndSet(false, true)) return;
+        AppDatabase db = AppDatabase.getInstance(context);
+        TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DISK_IO, TaskDispatcher.Priority.BACKGROUND, () -> {
+            int filled = backfill(db);
+            settings.setThumbnailBackfillDone();
+            Log.d(TAG, "Backfilled " + filled + " thumbnails");
+        });
+    }
+
+    // Pages on id, so rows whose image cannot be decoded are passed over rather than read again
+    private static int backfill(AppDatabase db) {
+        ScanResultDao dao = db.scanResultDao();
+        List<Integer> ids = new ArrayList<>();
+        List<byte[]> thumbnails = new ArrayList<>();
+        int afterId = 0;
+        int filled = 0;
+        while (true) {
+            ids.clear();
+            thumbnails.clear();
+            int rows = 0;
+            try (Cursor cursor = dao.unthumbnailedPage(afterId, PAGE)) {
+                while (cursor.moveToNext()) {
+                    rows++;
+                    afterId = cursor.getInt(0);
+                    byte[] thumbnail = ScanResult.thumbnailFromImage(cursor.getBlob(1));
+                    if (thumbnail == null) continue;
+                    ids.add(afterId);
+                    thumbnails.add(thumbnail);
+                }
+            }
+            if (rows == 0) return filled;
+            db.runInTransaction(() -> {
+                for (int i = 0; i < ids.size(); i++) dao.setThumbnail(ids.get(i), thumbnails.get(i));
+            });
+            filled += ids.size();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Project: CassavaCare
+ * File: TiledAnalyzer.java
+ * Description: Optional high-resolution analysis. The photo is cut into overlapping model-sized
+ *              tiles that are classified in batches, so small or off-center lesions are not lost to
+ *              the usual downscale and center crop; tile results are combined into an image-level
+ *              prediction and a coarse per-tile disease map.
+ *
+ * Author: Emmanuel Kirui Barkacha
+ * Email: ebarkacha@aimsammi.org
+ * GitHub: https://github.com/ekbarkacha
+ *
+ * Created: 2025
+ * License: MIT
+ */
+
+package com.ek.cassavacare;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Log;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+public class TiledAnalyzer {
+    private static final String TAG = "TiledAnalyzer";
+    // Tiled photos are decoded at this multiple of the usual resize target: about 1200 px on the
+    // shorter side, 12-20 tiles, instead of a full 12 MP frame that would need hundreds
+    public static final int DECODE_SCALE = 3;
+    // Neighbouring tiles share a quarter of their width, so a lesion on a seam is seen whole once
+    private static final float OVERLAP = 0.25f;
+    // Tiles per interpreter call; bounds the batch tensor to a few MB on small devices
+    private static final int BATCH_SIZE = 4;
+    // Each packing thread owns a packer, since packers reuse their buffers
+    private static final int PACK_WORKERS = 2;
+    // Disease scores are the mean of the strongest tiles, so one noisy tile does not decide alone
+    private static final int TOP_TILES = 2;
+
+    /** The label and confidence of every tile, row by row. */
+    public static class TileMap {
+        public final int rows;
+        public final int cols;
+        public final int tileWidth;
+        public final int tileHeight;
+        // Left and top edges of the tile columns and rows
+        public final int[] xs;
+        public final int[] ys;
+        public final int[] labels;
+        public final float[] confidences;
+
+        TileMap(int[] xs, int[] ys, int tileWidth, int tileHeight, float[][] probabilities) {
+            this.rows = ys.length;
+            this.cols = xs.length;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.xs = xs;
+            this.ys = ys;
+            labels = new int[probabilities.length];
+            confidences = new float[probabilities.length];
+            for (int i = 0; i < probabilities.length; i++) {
+                int best = 0;
+                for (int c = 1; c < probabilities[i].length; c++) {
+                    if (probabilities[i][c] > probabilities[i][best]) best = c;
+                }
+                labels[i] = best;
+                confidences[i] = probabilities[i][best];
+            }
+        }
+
+        /** A copy of image with every diseased tile tinted, for showing next to the result. */
+        public Bitmap render(Bitmap image) {
+            Bitmap copy = image.copy(Bitmap.Config.ARGB_8888, true);
+            // The map may come from an upscaled copy of a small image
+            float scaleX = copy.getWidth() / (float) (xs[cols - 1] + tileWidth);
+            float scaleY = copy.getHeight() / (float) (ys[rows - 1] + tileHeight);
+            float[] columnEdges = edges(xs, tileWidth, scaleX);
+            float[] rowEdges = edges(ys, tileHeight, scaleY);
+            Canvas canvas = new Canvas(copy);
+            Paint fill = new Paint();
+            Paint outline = new Paint();
+            outline.setStyle(Paint.Style.STROKE);
+            outline.setStrokeWidth(Math.max(2f, copy.getWidth() / 300f));
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == Classifier.HEALTHY_INDEX) continue;
+                int row = i / cols;
+                int col = i % cols;
+                int color = TILE_COLORS[labels[i] % TILE_COLORS.length];
+                fill.setColor(color);
+                fill.setAlpha(Math.round(40 + 100 * confidences[i]));
+                outline.setColor(color);
+                canvas.drawRect(columnEdges[col], rowEdges[row], columnEdges[col + 1], rowEdges[row + 1], fill);
+                canvas.drawRect(columnEdges[col], rowEdges[row], columnEdges[col + 1], rowEdges[row + 1], outline);
+            }
+            return copy;
+        }
+
+        // Tiles overlap, so each is drawn over the part of the image closest to its center
+        private static float[] edges(int[] origins, int tile, float scale) {
+            float[] edges = new float[origins.length + 1];
+            edges[origins.length] = (origins[origins.length - 1] + tile) * scale;
+            for (int i = 1; i < origins.length; i++) {
+                edges[i] = (origins[i - 1] + origins[i] + tile) / 2f * scale;
+            }
+            return edges;
+        }
+    }
+
+    // One colour per disease class, in Classifier.LABELS order
+    private static final int[] TILE_COLORS = {
+            Color.parseColor("#E53935"),
+            Color.parseColor("#8E24AA"),
+            Color.parseColor("#FDD835"),
+            Color.parseColor("#FB8C00"),
+            Color.parseColor("#43A047")
+    };
+
+    public static class Result {
+        public final Classification classification;
+        public final TileMap map;
+
+        Result(Classification classification, TileMap map) {
+            this.classification = classification;
+            this.map = map;
+        }
+    }
+
+    private TiledAnalyzer() {
+    }
+
+    /** Cache key suffix, so tiled and center-crop predictions of one photo are kept apart. */
+    public static String cacheKey(Classifier classifier) {
+        return classifier.getCacheKey() + "+tiled";
+    }
+
+    /** Classifies image tile by tile; call on the inference pool. */
+    public static Result analyze(Classifier classifier, Bitmap image) throws InterruptedException {
+        TensorPacker first = classifier.newTilePacker();
+        int tileWidth = first.getWidth();
+        int tileHeight = first.getHeight();
+        // Small images are scaled up just enough to hold one tile
+        float scale = Math.max(1f, Math.max(tileWidth / (float) image.getWidth(), tileHeight / (float) image.getHeight()));
+        Bitmap source = scale > 1f
+                ? Bitmap.createScaledBitmap(image, Math.round(image.getWidth() * scale), Math.round(image.getHeight() * scale), true)
+                : image;
+
+        int[] xs = offsets(source.getWidth(), tileWidth);
+        int[] ys = offsets(source.getHeight(), tileHeight);
+        int count = xs.length * ys.length;
+        int[] left = new int[count];
+        int[] top = new int[count];
+        for (int i = 0; i < count; i++) {
+            left[i] = xs[i % xs.length];
+            top[i] = ys[i / xs.length];
+        }
+
+        BlockingQueue<TensorPacker> packers = new ArrayBlockingQueue<>(PACK_WORKERS);
+        packers.add(first);
+        for (int i = 1; i < PACK_WORKERS; i++) packers.add(classifier.newTilePacker());
+        int tileBytes = tileWidth * tileHeight * 3 * 4;
+        // Two batch buffers: the next batch is packed on the decode pool while this one runs. Every
+        // batch is run at the full BATCH_SIZE, so the interpreter keeps its shape from photo to photo;
+        // slots past the last tile hold leftover input whose outputs are ignored
+        ByteBuffer[] buffers = new ByteBuffer[2];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(tileBytes * BATCH_SIZE).order(ByteOrder.nativeOrder());
+        }
+
+        float[][] probabilities = new float[count][];
+        List<TaskDispatcher.Task<Void>> packing = pack(source, left, top, 0, buffers[0], packers, tileWidth, tileHeight, count);
+        for (int start = 0, batch = 0; start < count; start += BATCH_SIZE, batch++) {
+            await(packing);
+            int next = start + BATCH_SIZE;
+            packing = next < count
+                    ? pack(source, left, top, next, buffers[(batch + 1) % 2], packers, tileWidth, tileHeight, count)
+                    : new ArrayList<>();
+            int size = Math.min(BATCH_SIZE, count - start);
+            float[][] output = classifier.getBatchProbabilities(buffers[batch % 2], BATCH_SIZE);
+            System.arraycopy(output, 0, probabilities, start, size);
+        }
+        Log.d(TAG, "Classified " + count + " tiles (" + xs.length + "x" + ys.length + ") of "
+                + source.getWidth() + "x" + source.getHeight());
+
+        Classification classification = classifier.interpret(aggregate(probabilities));
+        return new Result(classification, new TileMap(xs, ys, tileWidth, tileHeight, probabilities));
+    }
+
+    /**
+     * Healthy is the mean over all tiles; each disease is the mean of its TOP_TILES strongest tiles,
+     * since a lesion covering one corner should not be averaged away by the healthy rest.
+     */
+    static float[] aggregate(float[][] tiles) {
+        int classes = tiles[0].length;
+        float[] scores = new float[classes];
+        int top = Math.min(TOP_TILES, tiles.length);
+        for (int c = 0; c < classes; c++) {
+            if (c == Classifier.HEALTHY_INDEX) {
+                float sum = 0f;
+                for (float[] tile : tiles) sum += tile[c];
+                scores[c] = sum / tiles.length;
+                continue;
+            }
+            float[] best = new float[top];
+            for (float[] tile : tiles) {
+                float p = tile[c];
+                for (int k = 0; k < top; k++) {
+                    if (p > best[k]) {
+                        float swap = best[k];
+                        best[k] = p;
+                        p = swap;
+                    }
+                }
+            }
+            float sum = 0f;
+            for (float p : best) sum += p;
+            scores[c] = sum / top;
+        }
+        float total = 0f;
+        for (float score : scores) total += score;
+        for (int c = 0; c < classes; c++) scores[c] /= total;
+        return scores;
+    }
+
+    // Tile origins along one axis with OVERLAP between neighbours, the last one flush with the edge
+    static int[] offsets(int length, int tile) {
+        if (length <= tile) return new int[]{0};
+        int stride = Math.max(1, Math.round(tile * (1f - OVERLAP)));
+        int n = (int) Math.ceil((length - tile) / (double) stride) + 1;
+        int[] offsets = new int[n];
+        for (int i = 0; i < n; i++) offsets[i] = Math.min(i * stride, length - tile);
+        return offsets;
+    }
+
+    private static List<TaskDispatcher.Task<Void>> pack(Bitmap source, int[] left, int[] top, int start, ByteBuffer batch,
+                                                        BlockingQueue<TensorPacker> packers, int tileWidth, int tileHeight,
+                                                        int count) {
+        List<TaskDispatcher.Task<Void>> tasks = new ArrayList<>();
+        int end = Math.min(start + BATCH_SIZE, count);
+        for (int i = start; i < end; i++) {
+            int tile = i;
+            int slot = i - start;
+            tasks.add(TaskDispatcher.getInstance().submit(TaskDispatcher.Pool.DECODE, TaskDispatcher.Priority.USER, () -> {
+                TensorPacker packer = packers.take();
+                try {
+                    ByteBuffer packed = packer.pack(Bitmap.createBitmap(source, left[tile], top[tile], tileWidth, tileHeight));
+                    ByteBuffer target = batch.duplicate();
+                    target.position(slot * packed.remaining());
+                    target.put(packed);
+                } finally {
+                    packers.put(packer);
+                }
+                return null;
+            }));
+        }
+        return tasks;
+    }
+
+    private static void await(List<TaskDispatcher.Task<Void>> tasks) throws InterruptedException {
+        for (TaskDispatcher.Task<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Tile packing failed", e.getCause());
+            } catch (CancellationException e) {
+                throw new IllegalStateException("Tile packing was rejected", e);
+            }
+        }
+    }
+}